@@ -0,0 +1,244 @@
+package ape;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/* Content-defined chunking of large files for delta updates. Chunk
+ * boundaries are found with a gear rolling hash, so an insertion or
+ * deletion only changes the chunks around it. The binary manifest
+ * ("chunks.bin") lists, for every chunked file, its size and the
+ * length and SHA-256 of each chunk; the chunks themselves are stored
+ * next to it as chunks/<hex hash>. */
+public class Chunks {
+    public static final int MAGIC = 0x4843484b; /* "HCHK" */
+    public static final int VERSION = 1;
+    public static final String MANIFEST = "chunks.bin";
+    public static final String DIR = "chunks/";
+    /* Only files at least this large are worth chunking. */
+    public static final long MINFILE = 1 << 20;
+    static final int MIN = 16 << 10, MAX = 256 << 10;
+    static final long MASK = (1 << 16) - 1;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random rnd = new Random(0x6368756e6bL);
+        for (int i = 0; i < GEAR.length; i++)
+            GEAR[i] = rnd.nextLong();
+    }
+
+    public static class Chunk {
+        public final long off;
+        public final int len;
+        public final byte[] hash;
+
+        public Chunk(long off, int len, byte[] hash) {
+            this.off = off;
+            this.len = len;
+            this.hash = hash;
+        }
+
+        public String hex() {
+            return Hex.encodeHexString(hash);
+        }
+    }
+
+    public static class Entry {
+        public final long size;
+        public final List<Chunk> chunks;
+
+        public Entry(long size, List<Chunk> chunks) {
+            this.size = size;
+            this.chunks = chunks;
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /* Splits the stream into chunks, passing each to out (if not
+     * null) as it is found. */
+    public static List<Chunk> chunk(InputStream in, ChunkSink out) throws IOException {
+        List<Chunk> ret = new ArrayList<Chunk>();
+        MessageDigest md = sha256();
+        byte[] buf = new byte[MAX];
+        long off = 0, h = 0;
+        byte[] rbuf = new byte[65536];
+        int len = 0, rv;
+        while ((rv = in.read(rbuf)) >= 0) {
+            for (int i = 0; i < rv; i++) {
+                int b = rbuf[i] & 0xff;
+                buf[len++] = (byte) b;
+                h = (h << 1) + GEAR[b];
+                if ((len >= MAX) || ((len >= MIN) && ((h & MASK) == 0))) {
+                    ret.add(emit(md, buf, off, len, out));
+                    off += len;
+                    len = 0;
+                    h = 0;
+                }
+            }
+        }
+        if (len > 0)
+            ret.add(emit(md, buf, off, len, out));
+        return ret;
+    }
+
+    private static Chunk emit(MessageDigest md, byte[] buf, long off, int len, ChunkSink out) throws IOException {
+        md.update(buf, 0, len);
+        Chunk c = new Chunk(off, len, md.digest());
+        if (out != null)
+            out.put(c, buf);
+        return c;
+    }
+
+    public interface ChunkSink {
+        void put(Chunk c, byte[] data) throws IOException;
+    }
+
+    public static List<Chunk> chunk(File f, ChunkSink out) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            return chunk(in, out);
+        } finally {
+            in.close();
+        }
+    }
+
+    /* Chunks f, storing every chunk not already present under dir. */
+    public static Entry store(File f, final File dir) throws IOException {
+        List<Chunk> chunks = chunk(f, (c, data) -> {
+            File cf = new File(dir, DIR + c.hex());
+            if (!cf.exists()) {
+                cf.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(cf);
+                try {
+                    out.write(data, 0, c.len);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        return new Entry(f.length(), chunks);
+    }
+
+    public static void write(Map<String, Entry> entries, File f) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : new TreeMap<String, Entry>(entries).entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeInt(e.getValue().chunks.size());
+                for (Chunk c : e.getValue().chunks) {
+                    out.writeInt(c.len);
+                    out.write(c.hash);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static Map<String, Entry> read(InputStream fp) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fp));
+        if ((in.readInt() != MAGIC) || (in.readInt() != VERSION))
+            throw new IOException("Unknown chunk manifest format");
+        Map<String, Entry> ret = new HashMap<String, Entry>();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String path = in.readUTF();
+            long size = in.readLong();
+            int nc = in.readInt();
+            List<Chunk> chunks = new ArrayList<Chunk>(nc);
+            long off = 0;
+            for (int o = 0; o < nc; o++) {
+                int len = in.readInt();
+                byte[] hash = new byte[32];
+                in.readFully(hash);
+                chunks.add(new Chunk(off, len, hash));
+                off += len;
+            }
+            ret.put(path, new Entry(size, chunks));
+        }
+        return ret;
+    }
+
+    /* Rebuilds dst as described by e, reusing the chunks already
+     * present in the current version of dst and fetching the rest
+     * from baseurl. The result is written to tmp and only moved over
+     * dst once its whole-file hash matches. Returns the number of
+     * bytes fetched. */
+    public static long patch(File dst, File tmp, Entry e, String baseurl, String hash) throws IOException {
+        Map<String, Chunk> have = new HashMap<String, Chunk>();
+        if (dst.exists()) {
+            for (Chunk c : chunk(dst, null))
+                have.put(c.hex(), c);
+        }
+        long fetched = 0;
+        tmp.getParentFile().mkdirs();
+        MessageDigest whole = sha256();
+        RandomAccessFile old = dst.exists() ? new RandomAccessFile(dst, "r") : null;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            for (Chunk c : e.chunks) {
+                byte[] data = new byte[c.len];
+                Chunk lc = have.get(c.hex());
+                if (lc != null) {
+                    old.seek(lc.off);
+                    old.readFully(data);
+                } else {
+                    InputStream in = new URL(baseurl + DIR + c.hex()).openStream();
+                    try {
+                        new DataInputStream(in).readFully(data);
+                    } finally {
+                        in.close();
+                    }
+                    fetched += c.len;
+                }
+                if (!Arrays.equals(sha256().digest(data), c.hash))
+                    throw new IOException("Chunk " + c.hex() + " failed verification");
+                whole.update(data);
+                out.write(data);
+            }
+        } finally {
+            out.close();
+            if (old != null)
+                old.close();
+        }
+        if (!Hex.encodeHexString(whole.digest()).equals(hash)) {
+            FileUtils.deleteQuietly(tmp);
+            throw new IOException("Reassembled " + dst + " does not match its hash");
+        }
+        if (dst.exists())
+            FileUtils.forceDelete(dst);
+        FileUtils.moveFile(tmp, dst);
+        return fetched;
+    }
+}
@@ -1,16 +1,18 @@
 package ape;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.security.MessageDigest;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class Hasher {
     private class Filter implements org.apache.commons.io.filefilter.IOFileFilter {
         public boolean accept(File f) {
-            if (!f.getName().equals("ver") && !f.getName().equals("hafen-updater.jar"))
+            if (!f.getName().equals("ver") && !f.getName().equals("hashes.build") && !f.getName().equals(Chunks.MANIFEST)
+                    && !f.getName().equals("hafen-updater.jar") && !f.getParentFile().getName().equals("chunks"))
                 return true;
             else
                 return false;
@@ -24,6 +26,7 @@ public class Hasher {
     final File dir;
     final String vers;
     MessageDigest md;
+    final Manifest manifest = new Manifest(new File("hashes.build"));
 
     public Hasher(String basedir, String ver) {
         dir = new File(basedir);
@@ -36,8 +39,7 @@ public class Hasher {
     }
 
     public String getHash(File f) throws Exception {
-        System.out.println("Get hash for " + f.getAbsolutePath());
-        return DigestUtils.sha256Hex(FileUtils.readFileToByteArray(f));
+        return Manifest.sha256(f);
     }
 
     public void run() {
@@ -49,14 +51,30 @@ public class Hasher {
         sb.append('\n');
 
         try {
+            Map<String, File> files = new TreeMap<String, File>();
             while (itr.hasNext()) {
                 f = itr.next();
                 String fn = f.getAbsolutePath().substring(dir.getAbsolutePath().length() + 1);
-                sb.append(fn.replaceAll("\\\\", "/"));
+                files.put(fn.replaceAll("\\\\", "/"), f);
+            }
+            Map<String, String> hashes = manifest.hashAll(files);
+            for (String fn : files.keySet()) {
+                sb.append(fn);
                 sb.append('=');
-                sb.append(getHash(f));
+                sb.append(hashes.get(fn));
                 sb.append('\n');
             }
+            manifest.save();
+
+            //chunk large files for delta updates
+            Map<String, Chunks.Entry> chunks = new TreeMap<String, Chunks.Entry>();
+            for (Map.Entry<String, File> e : files.entrySet()) {
+                if (e.getValue().length() >= Chunks.MINFILE) {
+                    System.out.println("Chunking " + e.getKey());
+                    chunks.put(e.getKey(), Chunks.store(e.getValue(), new File(".")));
+                }
+            }
+            Chunks.write(chunks, new File(Chunks.MANIFEST));
 
             FileUtils.writeStringToFile(new File("ver"), sb.toString(), "UTF-8");
         } catch (Exception e) {
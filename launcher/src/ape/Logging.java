@@ -21,7 +21,7 @@ public class Logging {
         }
     }
 
-    public static void error(Exception e, boolean kill) {
+    public static synchronized void error(Exception e, boolean kill) {
         out.print("[ERROR] ");
         e.printStackTrace(out);
         out.flush();
@@ -31,7 +31,7 @@ public class Logging {
             System.exit(1);
     }
 
-    public static void log_nf(final String s) {
+    public static synchronized void log_nf(final String s) {
         out.print("[LOG] ");
         out.println(s);
         System.out.println("[LOG] " + s);
@@ -41,7 +41,7 @@ public class Logging {
         out.flush();
     }
 
-    public static void log(final String s) {
+    public static synchronized void log(final String s) {
         out.print("[LOG] ");
         out.println(s);
         out.flush();
@@ -0,0 +1,125 @@
+package ape;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Local record of (path, size, mtime, hash) for every file hashed so
+ * far, so that only files whose size or modification time changed
+ * need to be read again. */
+public class Manifest {
+    public static final int NTHREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static class Entry {
+        final long size, mtime;
+        final String hash;
+
+        Entry(long size, long mtime, String hash) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+        }
+    }
+
+    final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public Manifest(File file) {
+        this.file = file;
+        if (!file.exists())
+            return;
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                String ln;
+                while ((ln = br.readLine()) != null) {
+                    String[] p = ln.split("\t");
+                    if (p.length == 4)
+                        entries.put(p[0], new Entry(Long.parseLong(p[1]), Long.parseLong(p[2]), p[3]));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (Exception e) {
+            Logging.log("Discarding unreadable hash manifest " + file);
+            entries.clear();
+        }
+    }
+
+    public static String sha256(File f) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(f), 65536);
+        try {
+            return DigestUtils.sha256Hex(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public String hash(String path, File f) throws IOException {
+        if (!f.exists()) {
+            entries.remove(path);
+            return "";
+        }
+        long size = f.length(), mtime = f.lastModified();
+        Entry e = entries.get(path);
+        if ((e != null) && (e.size == size) && (e.mtime == mtime))
+            return e.hash;
+        Logging.log("Generating hash for " + path);
+        String hash = sha256(f);
+        entries.put(path, new Entry(size, mtime, hash));
+        return hash;
+    }
+
+    /* Hashes all given files on a thread pool, returning path -> hash. */
+    public Map<String, String> hashAll(Map<String, File> files) throws Exception {
+        ExecutorService exec = Executors.newFixedThreadPool(NTHREADS);
+        try {
+            Map<String, Future<String>> jobs = new HashMap<String, Future<String>>();
+            for (final Map.Entry<String, File> f : files.entrySet())
+                jobs.put(f.getKey(), exec.submit(() -> hash(f.getKey(), f.getValue())));
+            Map<String, String> ret = new HashMap<String, String>();
+            for (Map.Entry<String, Future<String>> job : jobs.entrySet())
+                ret.put(job.getKey(), job.getValue().get());
+            return ret;
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public void save() {
+        List<String> paths = new ArrayList<String>(entries.keySet());
+        java.util.Collections.sort(paths);
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                for (String path : paths) {
+                    Entry e = entries.get(path);
+                    if (e == null)
+                        continue;
+                    bw.write(path + "\t" + e.size + "\t" + e.mtime + "\t" + e.hash);
+                    bw.newLine();
+                }
+            } finally {
+                bw.close();
+            }
+        } catch (IOException e) {
+            Logging.error(e, false);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package ape;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Updater {
     public static void main(String args[]) {
@@ -28,9 +34,13 @@ public class Updater {
         }
     }
 
+    static final int NDOWNLOADS = 4;
     String baseurl;
     MessageDigest md;
     boolean skip = false;
+    final Manifest manifest = new Manifest(new File("hashes"));
+    final Map<String, String> want = new LinkedHashMap<String, String>();
+    Map<String, Chunks.Entry> chunks = null;
 
     public Updater(String[] args) {
         if (args[1].equals("skip") || args[1].equals("-s")) skip = true;
@@ -39,11 +49,7 @@ public class Updater {
     }
 
     public String getHash(String f) throws Exception {
-        Logging.log("Generating hash for " + f);
-        if (new File(f).exists())
-            return DigestUtils.sha256Hex(FileUtils.readFileToByteArray(new File(f)));
-        else
-            return "";
+        return manifest.hash(f, new File(f));
     }
 
     public String[] checkVer() throws Exception {
@@ -54,22 +60,45 @@ public class Updater {
         String[] kv;
 
 		//check if already updated
-        if (files[0].equals(old[0]) && skip) {
+        if ((old.length > 0) && files[0].equals(old[0]) && skip) {
             Logging.log("No update required");
             return null;
         }
 
-        //find different files
+        //find different files, only rehashing those changed since the last run
+        Map<String, File> local = new LinkedHashMap<String, File>();
         for (int i = 1; i < files.length; ++i) {
             kv = files[i].split("=");
-            Logging.log("Comparing file " + kv[0]);
-            if (!kv[1].equals(getHash(kv[0])))
-                download.add(baseurl + kv[0]);
+            want.put(kv[0], kv[1]);
+            local.put(kv[0], new File(kv[0]));
+        }
+        Map<String, String> have = manifest.hashAll(local);
+        for (Map.Entry<String, String> f : want.entrySet()) {
+            if (!f.getValue().equals(have.get(f.getKey()))) {
+                Logging.log("File " + f.getKey() + " differs");
+                download.add(baseurl + f.getKey());
+            }
         }
 
         return download.toArray(new String[0]);
     }
 
+    /* Tries to rebuild fn from its chunks, fetching only those that
+     * the local copy lacks. */
+    boolean patch(String fn) {
+        Chunks.Entry e = (chunks == null) ? null : chunks.get(fn);
+        if (e == null)
+            return false;
+        try {
+            long got = Chunks.patch(new File(fn), new File("tmp/" + fn), e, baseurl, want.get(fn));
+            Logging.log("Patched " + fn + ": fetched " + got + " of " + e.size + " bytes");
+            return true;
+        } catch (Exception exc) {
+            Logging.log("Patching " + fn + " failed (" + exc + "), downloading whole file");
+            return false;
+        }
+    }
+
     public void update() throws Exception {
         md = MessageDigest.getInstance("SHA-256");
         URL upd_url = new URL(baseurl + "ver");
@@ -79,17 +108,39 @@ public class Updater {
         String[] dls = checkVer();
 
         //download files missing/mismatch on hashes
-        if (dls != null) {
-            for (String dl : dls) {
-                String fn = dl.substring(baseurl.length());
-                Logging.log("Downloading " + dl + " -> " + fn);
+        if ((dls != null) && (dls.length > 0)) {
+            try {
+                InputStream in = new URL(baseurl + Chunks.MANIFEST).openStream();
                 try {
-                    FileUtils.copyURLToFile(new URL(dl.replaceAll("\\\\", "/")), new File(fn));
-                } catch (Exception e) {
-                    Logging.error(e, false);
+                    chunks = Chunks.read(in);
+                } finally {
+                    in.close();
                 }
+            } catch (Exception e) {
+                Logging.log("No chunk manifest, downloading whole files");
+            }
+        }
+        if (dls != null) {
+            ExecutorService exec = Executors.newFixedThreadPool(NDOWNLOADS);
+            List<Future<?>> jobs = new ArrayList<Future<?>>();
+            for (final String dl : dls) {
+                jobs.add(exec.submit(() -> {
+                    String fn = dl.substring(baseurl.length());
+                    Logging.log("Downloading " + dl + " -> " + fn);
+                    try {
+                        if (!patch(fn))
+                            FileUtils.copyURLToFile(new URL(dl.replaceAll("\\\\", "/")), new File(fn));
+                        getHash(fn);
+                    } catch (Exception e) {
+                        Logging.error(e, false);
+                    }
+                }));
             }
+            for (Future<?> job : jobs)
+                job.get();
+            exec.shutdown();
         }
+        manifest.save();
 
         Logging.log("Moving over new version file");
         FileUtils.forceDelete(new File("ver"));
@@ -62,11 +62,11 @@ public class BeltWnd extends MovableWidget {
         public void draw(GOut g) {
             if (TexGL.disableall)
                 return;
-            g.image(Inventory.invsq, Coord.z);
+            g.icon(Inventory.invsq, Coord.z);
             //if we have something draw it
             img().ifPresent(tex -> {
                 if (!dragging) {
-                    g.image(tex, offc);
+                    g.icon(tex, offc);
                 } else {
                     ui.drawafter(g2 -> g2.image(tex, ui.mc.sub(tex.sz().div(2))));
                 }
@@ -136,7 +136,7 @@ public class Buff extends Widget implements ItemInfo.ResOwner, Bufflist.Managed
         }
         try {
             Tex img = res.get().layer(Resource.imgc).tex();
-            g.image(img, imgoff);
+            g.icon(img, imgoff);
             Tex nmeter = (this.nmeter >= 0) ? nmeter() : nmeteri.get();
             if (nmeter != null)
                 g.aimage(nmeter, imgoff.add(img.sz()).sub(1, 1), 1, 1);
@@ -179,7 +179,7 @@ public class Buff extends Widget implements ItemInfo.ResOwner, Bufflist.Managed
 
         try {
             Tex img = ((this.res.get()).layer(Resource.imgc)).tex();
-            g.image(img, imgoff);
+            g.icon(img, imgoff);
             Tex nmeter = this.nmeter >= 0 ? this.nmeter() : this.nmeteri.get();
             if (nmeter != null) {
                 g.aimage(nmeter, imgoff.add(sz).sub(1, 1), 1.0D, 1.0D);
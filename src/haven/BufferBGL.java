@@ -27,25 +27,229 @@
 package haven;
 
 import javax.media.opengl.GL2;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import javax.media.opengl.GL3;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/* Records BGL calls into a packed int stream instead of allocating a
+ * Command object per call. Each instruction is a header word (opcode
+ * in the low byte, number of int operands and of object operands in
+ * the next two) followed by its int operands; object operands (IDs,
+ * arrays, GLObjects, ...) go to a parallel reference array. Floats
+ * are stored by their raw bits and longs as two ints. Calls without
+ * an opcode of their own fall back to the generic Command path and
+ * are stored as an OP_CMD instruction referencing the Command. */
 public class BufferBGL extends BGL {
-    private Command[] list;
-    private int n = 0;
+    private static final int OP_CMD = 0, OP_CREATE = 1, OP_SUBMIT = 2, OP_ACTIVETEXTURE = 3,
+            OP_BEGIN = 4, OP_END = 5, OP_ENABLE = 6, OP_DISABLE = 7, OP_ENABLECS = 8, OP_DISABLECS = 9,
+            OP_BINDBUFFER = 10, OP_BINDTEXTURE = 11, OP_BINDVA = 12, OP_BINDFB = 13, OP_BLENDFUNC = 14,
+            OP_CLEAR = 15, OP_CLEARCOLOR = 16, OP_COLOR3F = 17, OP_COLOR4F = 18, OP_COLOR4FV = 19,
+            OP_DEPTHFUNC = 20, OP_DEPTHMASK = 21, OP_DRAWARRAYS = 22, OP_DRAWRANGEELEMENTS = 23,
+            OP_DRAWELEMENTSINST = 24, OP_ENABLEVAA = 25, OP_DISABLEVAA = 26, OP_VADIVISOR = 27,
+            OP_VAPOINTER = 28, OP_LINEWIDTH = 29, OP_POINTSIZE = 30, OP_NORMAL3F = 31, OP_TEXCOORD2F = 32,
+            OP_POLYGONMODE = 33, OP_SCISSOR = 34, OP_VIEWPORT = 35, OP_TEXPARAMETERI = 36,
+            OP_UNIFORM1I = 37, OP_UNIFORM1F = 38, OP_UNIFORM2F = 39, OP_UNIFORM3F = 40, OP_UNIFORM4F = 41,
+            OP_UNIFORM3FV = 42, OP_UNIFORM4FV = 43, OP_UNIFORMMATRIX3FV = 44, OP_UNIFORMMATRIX4FV = 45,
+            OP_USEPROGRAM = 46, OP_VERTEX2F = 47, OP_VERTEX2I = 48, OP_VERTEX3F = 49, OP_VERTEX3I = 50;
+    private static final String[] opnames = {
+            "cmd", "bglCreate", "bglSubmit", "glActiveTexture",
+            "glBegin", "glEnd", "glEnable", "glDisable", "glEnableClientState", "glDisableClientState",
+            "glBindBuffer", "glBindTexture", "glBindVertexArray", "glBindFramebuffer", "glBlendFunc",
+            "glClear", "glClearColor", "glColor3f", "glColor4f", "glColor4fv",
+            "glDepthFunc", "glDepthMask", "glDrawArrays", "glDrawRangeElements",
+            "glDrawElementsInstanced", "glEnableVertexAttribArray", "glDisableVertexAttribArray", "glVertexAttribDivisor",
+            "glVertexAttribPointer", "glLineWidth", "glPointSize", "glNormal3f", "glTexCoord2f",
+            "glPolygonMode", "glScissor", "glViewport", "glTexParameteri",
+            "glUniform1i", "glUniform1f", "glUniform2f", "glUniform3f", "glUniform4f",
+            "glUniform3fv", "glUniform4fv", "glUniformMatrix3fv", "glUniformMatrix4fv",
+            "glUseProgramObjectARB", "glVertex2f", "glVertex2i", "glVertex3f", "glVertex3i",
+    };
+    private int[] ops;
+    private Object[] refs;
+    private int n = 0, nr = 0, ncmd = 0;
 
     public BufferBGL(int c) {
-        list = new Command[c];
+        ops = new int[c * 4];
+        refs = new Object[c];
     }
 
     public BufferBGL() {
         this(512);
     }
 
+    private static int id(Object id) {
+        return ((id == null) ? 0 : ((ID) id).glid());
+    }
+
     public void run(GL2 gl) {
-        for (int i = 0; i < n; i++) {
+        int[] ops = this.ops;
+        Object[] refs = this.refs;
+        int p = 0, r = 0;
+        while (p < n) {
+            int h = ops[p];
+            int i = p + 1;
+            p = i + ((h >>> 8) & 0xff);
+            int o = r;
+            r = o + ((h >>> 16) & 0xff);
             try {
-                list[i].run(gl);
+                switch (h & 0xff) {
+                    case OP_CMD:
+                        ((Command) refs[o]).run(gl);
+                        break;
+                    case OP_CREATE:
+                        ((GLObject) refs[o]).create(gl);
+                        break;
+                    case OP_SUBMIT:
+                        ((Request) refs[o]).run(gl);
+                        break;
+                    case OP_ACTIVETEXTURE:
+                        gl.glActiveTexture(ops[i]);
+                        break;
+                    case OP_BEGIN:
+                        gl.glBegin(ops[i]);
+                        break;
+                    case OP_END:
+                        gl.glEnd();
+                        break;
+                    case OP_ENABLE:
+                        gl.glEnable(ops[i]);
+                        break;
+                    case OP_DISABLE:
+                        gl.glDisable(ops[i]);
+                        break;
+                    case OP_ENABLECS:
+                        gl.glEnableClientState(ops[i]);
+                        break;
+                    case OP_DISABLECS:
+                        gl.glDisableClientState(ops[i]);
+                        break;
+                    case OP_BINDBUFFER:
+                        gl.glBindBuffer(ops[i], id(refs[o]));
+                        break;
+                    case OP_BINDTEXTURE:
+                        gl.glBindTexture(ops[i], id(refs[o]));
+                        break;
+                    case OP_BINDVA:
+                        gl.glBindVertexArray(id(refs[o]));
+                        break;
+                    case OP_BINDFB:
+                        gl.glBindFramebuffer(ops[i], id(refs[o]));
+                        break;
+                    case OP_BLENDFUNC:
+                        gl.glBlendFunc(ops[i], ops[i + 1]);
+                        break;
+                    case OP_CLEAR:
+                        gl.glClear(ops[i]);
+                        break;
+                    case OP_CLEARCOLOR:
+                        gl.glClearColor(f(ops[i]), f(ops[i + 1]), f(ops[i + 2]), f(ops[i + 3]));
+                        break;
+                    case OP_COLOR3F:
+                        gl.glColor3f(f(ops[i]), f(ops[i + 1]), f(ops[i + 2]));
+                        break;
+                    case OP_COLOR4F:
+                        gl.glColor4f(f(ops[i]), f(ops[i + 1]), f(ops[i + 2]), f(ops[i + 3]));
+                        break;
+                    case OP_COLOR4FV:
+                        gl.glColor4fv((float[]) refs[o], ops[i]);
+                        break;
+                    case OP_DEPTHFUNC:
+                        gl.glDepthFunc(ops[i]);
+                        break;
+                    case OP_DEPTHMASK:
+                        gl.glDepthMask(ops[i] != 0);
+                        break;
+                    case OP_DRAWARRAYS:
+                        gl.glDrawArrays(ops[i], ops[i + 1], ops[i + 2]);
+                        break;
+                    case OP_DRAWRANGEELEMENTS:
+                        gl.glDrawRangeElements(ops[i], ops[i + 1], ops[i + 2], ops[i + 3], ops[i + 4], l(ops, i + 5));
+                        break;
+                    case OP_DRAWELEMENTSINST:
+                        gl.glDrawElementsInstanced(ops[i], ops[i + 1], ops[i + 2], l(ops, i + 3), ops[i + 5]);
+                        break;
+                    case OP_ENABLEVAA:
+                        gl.glEnableVertexAttribArray(((ID) refs[o]).glid() + ops[i]);
+                        break;
+                    case OP_DISABLEVAA:
+                        gl.glDisableVertexAttribArray(((ID) refs[o]).glid() + ops[i]);
+                        break;
+                    case OP_VADIVISOR:
+                        ((GL3) gl).glVertexAttribDivisor(((ID) refs[o]).glid() + ops[i], ops[i + 1]);
+                        break;
+                    case OP_VAPOINTER:
+                        gl.glVertexAttribPointer(((ID) refs[o]).glid() + ops[i], ops[i + 1], ops[i + 2], ops[i + 3] != 0, ops[i + 4], l(ops, i + 5));
+                        break;
+                    case OP_LINEWIDTH:
+                        gl.glLineWidth(f(ops[i]));
+                        break;
+                    case OP_POINTSIZE:
+                        gl.glPointSize(f(ops[i]));
+                        break;
+                    case OP_NORMAL3F:
+                        gl.glNormal3f(f(ops[i]), f(ops[i + 1]), f(ops[i + 2]));
+                        break;
+                    case OP_TEXCOORD2F:
+                        gl.glTexCoord2f(f(ops[i]), f(ops[i + 1]));
+                        break;
+                    case OP_POLYGONMODE:
+                        gl.glPolygonMode(ops[i], ops[i + 1]);
+                        break;
+                    case OP_SCISSOR:
+                        gl.glScissor(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+                        break;
+                    case OP_VIEWPORT:
+                        gl.glViewport(ops[i], ops[i + 1], ops[i + 2], ops[i + 3]);
+                        break;
+                    case OP_TEXPARAMETERI:
+                        gl.glTexParameteri(ops[i], ops[i + 1], ops[i + 2]);
+                        break;
+                    case OP_UNIFORM1I:
+                        gl.glUniform1i(((ID) refs[o]).glid(), ops[i]);
+                        break;
+                    case OP_UNIFORM1F:
+                        gl.glUniform1f(((ID) refs[o]).glid(), f(ops[i]));
+                        break;
+                    case OP_UNIFORM2F:
+                        gl.glUniform2f(((ID) refs[o]).glid(), f(ops[i]), f(ops[i + 1]));
+                        break;
+                    case OP_UNIFORM3F:
+                        gl.glUniform3f(((ID) refs[o]).glid(), f(ops[i]), f(ops[i + 1]), f(ops[i + 2]));
+                        break;
+                    case OP_UNIFORM4F:
+                        gl.glUniform4f(((ID) refs[o]).glid(), f(ops[i]), f(ops[i + 1]), f(ops[i + 2]), f(ops[i + 3]));
+                        break;
+                    case OP_UNIFORM3FV:
+                        gl.glUniform3fv(((ID) refs[o]).glid(), ops[i], (float[]) refs[o + 1], ops[i + 1]);
+                        break;
+                    case OP_UNIFORM4FV:
+                        gl.glUniform4fv(((ID) refs[o]).glid(), ops[i], (float[]) refs[o + 1], ops[i + 1]);
+                        break;
+                    case OP_UNIFORMMATRIX3FV:
+                        gl.glUniformMatrix3fv(((ID) refs[o]).glid(), ops[i], ops[i + 1] != 0, (float[]) refs[o + 1], ops[i + 2]);
+                        break;
+                    case OP_UNIFORMMATRIX4FV:
+                        gl.glUniformMatrix4fv(((ID) refs[o]).glid(), ops[i], ops[i + 1] != 0, (float[]) refs[o + 1], ops[i + 2]);
+                        break;
+                    case OP_USEPROGRAM:
+                        gl.glUseProgramObjectARB(((ID) refs[o]).glid());
+                        break;
+                    case OP_VERTEX2F:
+                        gl.glVertex2f(f(ops[i]), f(ops[i + 1]));
+                        break;
+                    case OP_VERTEX2I:
+                        gl.glVertex2i(ops[i], ops[i + 1]);
+                        break;
+                    case OP_VERTEX3F:
+                        gl.glVertex3f(f(ops[i]), f(ops[i + 1]), f(ops[i + 2]));
+                        break;
+                    case OP_VERTEX3I:
+                        gl.glVertex3i(ops[i], ops[i + 1], ops[i + 2]);
+                        break;
+                    default:
+                        throw (new RuntimeException("Invalid BGL opcode: " + (h & 0xff)));
+                }
             } catch (Exception exc) {
                 // FIXME
                 // haven't investigated yet why this fails with assortment of exceptions
@@ -55,33 +259,218 @@ public class BufferBGL extends BGL {
         }
     }
 
+    /* Empties the buffer for reuse, keeping its backing arrays. */
+    public void clear() {
+        Arrays.fill(refs, 0, nr, null);
+        n = nr = ncmd = 0;
+    }
+
+    /* Number of recorded instructions, and how many of them went
+     * through the generic Command path. */
+    public int size() {
+        int ret = 0;
+        for (int p = 0; p < n; p += 1 + ((ops[p] >>> 8) & 0xff))
+            ret++;
+        return (ret);
+    }
+
+    public int ncmds() {
+        return (ncmd);
+    }
+
+    private static float f(int bits) {
+        return (Float.intBitsToFloat(bits));
+    }
+
+    private static long l(int[] ops, int i) {
+        return ((((long) ops[i]) << 32) | (ops[i + 1] & 0xffffffffL));
+    }
+
+    private void op(int op, int nints, int nrefs) {
+        if (n + 1 + nints > ops.length)
+            ops = Arrays.copyOf(ops, Math.max(ops.length * 2, n + 1 + nints));
+        if (nr + nrefs > refs.length)
+            refs = Arrays.copyOf(refs, Math.max(refs.length * 2, nr + nrefs));
+        ops[n++] = op | (nints << 8) | (nrefs << 16);
+    }
+
+    private void i(int v) {
+        ops[n++] = v;
+    }
+
+    private void f(float v) {
+        ops[n++] = Float.floatToRawIntBits(v);
+    }
+
+    private void l(long v) {
+        ops[n++] = (int) (v >>> 32);
+        ops[n++] = (int) v;
+    }
+
+    private void r(Object o) {
+        refs[nr++] = o;
+    }
+
     protected void add(Command cmd) {
-        if (n >= list.length)
-            list = Utils.extend(list, list.length * 2);
-        list[n++] = cmd;
+        op(OP_CMD, 0, 1);
+        r(cmd);
+        ncmd++;
+    }
+
+    public void bglCreate(GLObject ob) {op(OP_CREATE, 0, 1); r(ob);}
+
+    public void bglSubmit(Request req) {op(OP_SUBMIT, 0, 1); r(req);}
+
+    public void glActiveTexture(int texture) {op(OP_ACTIVETEXTURE, 1, 0); i(texture);}
+
+    public void glBegin(int mode) {op(OP_BEGIN, 1, 0); i(mode);}
+
+    public void glEnd() {op(OP_END, 0, 0);}
+
+    public void glEnable(int cap) {op(OP_ENABLE, 1, 0); i(cap);}
+
+    public void glDisable(int cap) {op(OP_DISABLE, 1, 0); i(cap);}
+
+    public void glEnableClientState(int cap) {op(OP_ENABLECS, 1, 0); i(cap);}
+
+    public void glDisableClientState(int cap) {op(OP_DISABLECS, 1, 0); i(cap);}
+
+    public void glBindBuffer(int target, ID buffer) {op(OP_BINDBUFFER, 1, 1); i(target); r(buffer);}
+
+    public void glBindTexture(int target, ID texture) {op(OP_BINDTEXTURE, 1, 1); i(target); r(texture);}
+
+    public void glBindVertexArray(ID array) {op(OP_BINDVA, 0, 1); r(array);}
+
+    public void glBindFramebuffer(int target, ID buffer) {op(OP_BINDFB, 1, 1); i(target); r(buffer);}
+
+    public void glBlendFunc(int sfac, int dfac) {op(OP_BLENDFUNC, 2, 0); i(sfac); i(dfac);}
+
+    public void glClear(int mask) {op(OP_CLEAR, 1, 0); i(mask);}
+
+    public void glClearColor(float r, float g, float b, float a) {op(OP_CLEARCOLOR, 4, 0); f(r); f(g); f(b); f(a);}
+
+    public void glColor3f(float r, float g, float b) {op(OP_COLOR3F, 3, 0); f(r); f(g); f(b);}
+
+    public void glColor4f(float r, float g, float b, float a) {op(OP_COLOR4F, 4, 0); f(r); f(g); f(b); f(a);}
+
+    public void glColor4fv(float[] v, int n) {op(OP_COLOR4FV, 1, 1); i(n); r(v);}
+
+    public void glDepthFunc(int func) {op(OP_DEPTHFUNC, 1, 0); i(func);}
+
+    public void glDepthMask(boolean mask) {op(OP_DEPTHMASK, 1, 0); i(mask ? 1 : 0);}
+
+    public void glDrawArrays(int mode, int first, int count) {op(OP_DRAWARRAYS, 3, 0); i(mode); i(first); i(count);}
+
+    public void glDrawRangeElements(int mode, int start, int end, int count, int type, long indices) {
+        op(OP_DRAWRANGEELEMENTS, 7, 0); i(mode); i(start); i(end); i(count); i(type); l(indices);
+    }
+
+    public void glDrawElementsInstanced(int mode, int count, int type, long indices, int primcount) {
+        op(OP_DRAWELEMENTSINST, 6, 0); i(mode); i(count); i(type); l(indices); i(primcount);
+    }
+
+    public void glEnableVertexAttribArray(ID location) {glEnableVertexAttribArray(location, 0);}
+
+    public void glEnableVertexAttribArray(ID location, int offset) {op(OP_ENABLEVAA, 1, 1); i(offset); r(location);}
+
+    public void glDisableVertexAttribArray(ID location) {glDisableVertexAttribArray(location, 0);}
+
+    public void glDisableVertexAttribArray(ID location, int offset) {op(OP_DISABLEVAA, 1, 1); i(offset); r(location);}
+
+    public void glVertexAttribDivisor(ID location, int divisor) {glVertexAttribDivisor(location, 0, divisor);}
+
+    public void glVertexAttribDivisor(ID location, int offset, int divisor) {op(OP_VADIVISOR, 2, 1); i(offset); i(divisor); r(location);}
+
+    public void glVertexAttribPointer(ID location, int size, int type, boolean normalized, int stride, long pointer) {
+        glVertexAttribPointer(location, 0, size, type, normalized, stride, pointer);
+    }
+
+    public void glVertexAttribPointer(ID location, int offset, int size, int type, boolean normalized, int stride, long pointer) {
+        op(OP_VAPOINTER, 7, 1); i(offset); i(size); i(type); i(normalized ? 1 : 0); i(stride); l(pointer); r(location);
+    }
+
+    public void glLineWidth(float w) {op(OP_LINEWIDTH, 1, 0); f(w);}
+
+    public void glPointSize(float size) {op(OP_POINTSIZE, 1, 0); f(size);}
+
+    public void glNormal3f(float x, float y, float z) {op(OP_NORMAL3F, 3, 0); f(x); f(y); f(z);}
+
+    public void glTexCoord2f(float s, float t) {op(OP_TEXCOORD2F, 2, 0); f(s); f(t);}
+
+    public void glPolygonMode(int face, int mode) {op(OP_POLYGONMODE, 2, 0); i(face); i(mode);}
+
+    public void glScissor(int x, int y, int w, int h) {op(OP_SCISSOR, 4, 0); i(x); i(y); i(w); i(h);}
+
+    public void glViewport(int x, int y, int w, int h) {op(OP_VIEWPORT, 4, 0); i(x); i(y); i(w); i(h);}
+
+    public void glTexParameteri(int target, int pname, int param) {op(OP_TEXPARAMETERI, 3, 0); i(target); i(pname); i(param);}
+
+    public void glUniform1i(ID location, int v0) {op(OP_UNIFORM1I, 1, 1); i(v0); r(location);}
+
+    public void glUniform1f(ID location, float v0) {op(OP_UNIFORM1F, 1, 1); f(v0); r(location);}
+
+    public void glUniform2f(ID location, float v0, float v1) {op(OP_UNIFORM2F, 2, 1); f(v0); f(v1); r(location);}
+
+    public void glUniform3f(ID location, float v0, float v1, float v2) {op(OP_UNIFORM3F, 3, 1); f(v0); f(v1); f(v2); r(location);}
+
+    public void glUniform4f(ID location, float v0, float v1, float v2, float v3) {op(OP_UNIFORM4F, 4, 1); f(v0); f(v1); f(v2); f(v3); r(location);}
+
+    public void glUniform3fv(ID location, int count, float[] val, int n) {op(OP_UNIFORM3FV, 2, 2); i(count); i(n); r(location); r(val);}
+
+    public void glUniform4fv(ID location, int count, float[] val, int n) {op(OP_UNIFORM4FV, 2, 2); i(count); i(n); r(location); r(val);}
+
+    public void glUniformMatrix3fv(ID location, int count, boolean transpose, float[] value, int n) {
+        op(OP_UNIFORMMATRIX3FV, 3, 2); i(count); i(transpose ? 1 : 0); i(n); r(location); r(value);
+    }
+
+    public void glUniformMatrix4fv(ID location, int count, boolean transpose, float[] value, int n) {
+        op(OP_UNIFORMMATRIX4FV, 3, 2); i(count); i(transpose ? 1 : 0); i(n); r(location); r(value);
+    }
+
+    public void glUseProgramObjectARB(ID program) {op(OP_USEPROGRAM, 0, 1); r(program);}
+
+    public void glVertex2f(float x, float y) {op(OP_VERTEX2F, 2, 0); f(x); f(y);}
+
+    public void glVertex2i(int x, int y) {op(OP_VERTEX2I, 2, 0); i(x); i(y);}
+
+    public void glVertex3f(float x, float y, float z) {op(OP_VERTEX3F, 3, 0); f(x); f(y); f(z);}
+
+    public void glVertex3i(int x, int y, int z) {op(OP_VERTEX3I, 3, 0); i(x); i(y); i(z);}
+
+    /* Stand-in for packed instructions in BGL dumps, which describe
+     * commands by their class and fields; the instruction itself is
+     * only ever run from the packed buffer, so running the stand-in
+     * does nothing. */
+    private static class Packed extends Command {
+        final String op;
+        final Object[] args;
+
+        Packed(String op, Object[] args) {
+            this.op = op;
+            this.args = args;
+        }
+
+        public void run(GL2 gl) {
+        }
     }
 
     protected Iterable<Command> dump() {
-        return (new Iterable<Command>() {
-            public Iterator<Command> iterator() {
-                return (new Iterator<Command>() {
-                    int i = 0;
-
-                    public boolean hasNext() {
-                        return (i < n);
-                    }
-
-                    public Command next() {
-                        if (i < n)
-                            return (list[i++]);
-                        throw (new NoSuchElementException());
-                    }
-
-                    public void remove() {
-                        throw (new UnsupportedOperationException());
-                    }
-                });
+        List<Command> ret = new ArrayList<Command>();
+        for (int p = 0, r = 0; p < n; ) {
+            int h = ops[p], ni = (h >>> 8) & 0xff, nrf = (h >>> 16) & 0xff;
+            if ((h & 0xff) == OP_CMD) {
+                ret.add((Command) refs[r]);
+            } else {
+                Object[] args = new Object[ni + nrf];
+                for (int i = 0; i < ni; i++)
+                    args[i] = ops[p + 1 + i];
+                for (int i = 0; i < nrf; i++)
+                    args[ni + i] = refs[r + i];
+                ret.add(new Packed(opnames[h & 0xff], args));
             }
-        });
+            p += 1 + ni;
+            r += nrf;
+        }
+        return (ret);
     }
 }
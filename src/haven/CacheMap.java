@@ -37,6 +37,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CacheMap<K, V> extends AbstractMap<K, V> {
     private final Map<K, Reference<V>> back;
@@ -88,9 +89,13 @@ public class CacheMap<K, V> extends AbstractMap<K, V> {
         public abstract <K, V> Reference<V> mkref(K k, V v, ReferenceQueue<V> cleanq);
     }
 
-    public CacheMap(RefType type) {
+    public CacheMap(RefType type, boolean concurrent) {
         this.reftype = type;
-        this.back = new HashMap<K, Reference<V>>();
+        this.back = concurrent ? new ConcurrentHashMap<K, Reference<V>>() : new HashMap<K, Reference<V>>();
+    }
+
+    public CacheMap(RefType type) {
+        this(type, false);
     }
 
     public CacheMap() {
@@ -197,7 +202,8 @@ public class CacheMap<K, V> extends AbstractMap<K, V> {
         Reference<? extends V> ref;
         while ((ref = cleanq.poll()) != null) {
             Ref rr = (Ref) ref;
-            back.remove(rr.key());
+            /* Don't remove a newer mapping for the same key. */
+            back.remove(rr.key(), ref);
         }
     }
 
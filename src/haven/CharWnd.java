@@ -194,6 +194,7 @@ public class CharWnd extends Window {
                     Collections.sort(enew, dcmp);
                     els = enew;
                     rtip = null;
+                    redraw();
                 } catch (Loading l) {
                 }
                 enew = null;
@@ -209,6 +210,9 @@ public class CharWnd extends Window {
                 } catch (Loading l) {
                 }
             }
+            /* The gain overlay fades out over time. */
+            if (trtm > 0)
+                redraw();
         }
 
         public void draw(GOut g) {
@@ -529,9 +533,13 @@ public class CharWnd extends Window {
                     tooltip = null;
                 }
                 ct = attrf.render(Integer.toString(ccv), c);
+                redraw();
+            }
+            if (lvlt > 0.0) {
+                if ((lvlt -= dt) < 0)
+                    lvlt = 0.0;
+                redraw();
             }
-            if ((lvlt > 0.0) && ((lvlt -= dt) < 0))
-                lvlt = 0.0;
         }
 
         public void draw(GOut g) {
@@ -616,8 +624,11 @@ public class CharWnd extends Window {
 
 
         public void tick(double dt) {
+            /* Attributes change through Glob, not through messages to
+             * this widget, so the cached window must be told. */
             if ((attr.base != cbv) || (attr.comp != ccv)) {
                 cbv = attr.base;
+                redraw();
             }
             if (attr.comp != ccv) {
                 ccv = attr.comp;
@@ -739,10 +750,12 @@ public class CharWnd extends Window {
             setcolor(new Color(192, 192, 255));
         }
 
-        public void draw(GOut g) {
-            super.draw(g);
-            if (exp != cexp)
+        public void tick(double dt) {
+            super.tick(dt);
+            if (exp != cexp) {
                 settext(Utils.thformat(cexp = exp));
+                redraw();
+            }
         }
     }
 
@@ -754,10 +767,12 @@ public class CharWnd extends Window {
             setcolor(new Color(255, 255, 192));
         }
 
-        public void draw(GOut g) {
-            super.draw(g);
-            if (enc != cenc)
+        public void tick(double dt) {
+            super.tick(dt);
+            if (enc != cenc) {
                 settext(Utils.thformat(cenc = enc));
+                redraw();
+            }
         }
     }
 
@@ -2104,6 +2119,7 @@ public class CharWnd extends Window {
 
     public CharWnd(Glob glob) {
         super(Coord.z, "Character Sheet", "Character Sheet");
+        setcached(true);
 
         final Tabs tabs = new Tabs(new Coord(15, 10), Coord.z, this);
         Tabs.Tab battr;
@@ -51,13 +51,16 @@ import java.text.AttributedCharacterIterator.Attribute;
 import java.text.CharacterIterator;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -178,44 +181,90 @@ public class ChatUI extends Widget {
     }
 
 
+    /* Channels keep every message of the session, but only the
+     * messages in or near the visible window hold rendered text; the
+     * rest keep their source text and size, and are rendered again
+     * when scrolled back into view. Message positions are kept as
+     * running offsets, so that drawing and hit testing only look at
+     * the visible messages. The oldest messages are dropped once a
+     * channel holds more than maxhist of them. */
     public static abstract class Channel extends Widget {
-        public final List<Message> msgs = new LinkedList<Message>();
+        public static int maxhist = Utils.getprefi("chathistory", 10000);
+        /* Seconds that rendered text is kept after last being drawn. */
+        private static final double KEEPTEXT = 5.0;
+        public final List<Message> msgs = new ArrayList<Message>();
+        private final Set<Message> live = new LinkedHashSet<Message>();
+        private int[] msgy = new int[16];
+        private long mseq = 0;
         private final Scrollbar sb;
         private final IButton cb;
         public int urgency = 0;
 
+        static {
+            Console.setscmd("chathistory", (cons, args) -> {
+                if (args.length >= 2)
+                    Utils.setprefi("chathistory", maxhist = Math.max(Integer.parseInt(args[1]), 100));
+                else
+                    cons.out.printf("keeping %d messages per channel\n", maxhist);
+            });
+        }
+
         public static abstract class Message {
             public final double time = Utils.ntime();
+            private long seq;
+            private double lastdraw;
 
             public abstract Text text();
 
             public abstract Tex tex();
 
             public abstract Coord sz();
+
+            /* Drops the rendered text, which text() must then be able
+             * to render again. */
+            public void release() {
+            }
         }
 
         public static class SimpleMessage extends Message {
-            private final Text t;
+            private final String src;
+            private final Color col;
+            private final int w;
+            private Text t;
+            private final Coord sz;
 
             public SimpleMessage(String text, Color col, int w) {
                 if (Config.chattimestamp)
                     text = timestamp(text);
-                if (col == null)
-                    this.t = fnd.render(RichText.Parser.quote(text), w);
-                else
-                    this.t = fnd.render(RichText.Parser.quote(text), w, TextAttribute.FOREGROUND, col);
+                this.src = RichText.Parser.quote(text);
+                this.col = col;
+                this.w = w;
+                this.sz = text().sz();
             }
 
             public Text text() {
+                if (t == null) {
+                    if (col == null)
+                        t = fnd.render(src, w);
+                    else
+                        t = fnd.render(src, w, TextAttribute.FOREGROUND, col);
+                }
                 return (t);
             }
 
             public Tex tex() {
-                return (t.tex());
+                return (text().tex());
             }
 
             public Coord sz() {
-                return (t.sz());
+                return (sz);
+            }
+
+            public void release() {
+                if (t != null) {
+                    t.dispose();
+                    t = null;
+                }
             }
         }
 
@@ -227,14 +276,67 @@ public class ChatUI extends Widget {
                 cb = null;
         }
 
+        /* Recomputes message offsets from message i on. */
+        private void relayout(int i) {
+            int n = msgs.size();
+            if (msgy.length < n + 1)
+                msgy = Arrays.copyOf(msgy, Math.max(n + 1, msgy.length * 2));
+            msgy[0] = 0;
+            for (; i < n; i++)
+                msgy[i + 1] = msgy[i] + msgs.get(i).sz().y;
+        }
+
+        private int logh() {
+            return (msgy[msgs.size()]);
+        }
+
+        /* Index of the message at log offset y, or msgs.size() if
+         * past the end. */
+        private int msgidx(int y) {
+            int l = 0, r = msgs.size();
+            while (l < r) {
+                int m = (l + r) >>> 1;
+                if (msgy[m + 1] <= y)
+                    l = m + 1;
+                else
+                    r = m;
+            }
+            return (l);
+        }
+
+        private void trim() {
+            int n = msgs.size() - maxhist;
+            if (n <= 0)
+                return;
+            /* Drop a few more, so as not to shift the log on every message. */
+            n = Math.min(msgs.size(), n + (maxhist / 10));
+            List<Message> old = msgs.subList(0, n);
+            for (CharPos p : new CharPos[]{selorig, selstart, selend}) {
+                if ((p != null) && (p.msg.seq <= old.get(n - 1).seq)) {
+                    selorig = lasthit = selstart = selend = null;
+                    break;
+                }
+            }
+            for (Message m : old) {
+                if (live.remove(m))
+                    m.release();
+            }
+            int dh = msgy[n];
+            old.clear();
+            relayout(0);
+            sb.val = Math.max(sb.val - dh, 0);
+        }
+
         public void append(Message msg) {
             synchronized (msgs) {
+                msg.seq = mseq++;
+                msg.lastdraw = Utils.rtime();
                 msgs.add(msg);
-                int y = 0;
-                for (Message m : msgs)
-                    y += m.sz().y;
+                live.add(msg);
+                relayout(msgs.size() - 1);
                 boolean b = sb.val >= sb.max;
-                sb.max = y - ih();
+                trim();
+                sb.max = logh() - ih();
                 if (b)
                     sb.val = sb.max;
             }
@@ -263,33 +365,63 @@ public class ChatUI extends Widget {
             }
         }
 
+        /* Returns msg's text for hit testing or copying, counting it as
+         * drawn so that tick() releases it again in due course. */
+        private Text text(Message msg) {
+            synchronized (msgs) {
+                live.add(msg);
+                msg.lastdraw = Utils.rtime();
+                return (msg.text());
+            }
+        }
+
+        private boolean insel(Message msg) {
+            return ((selstart != null) && (selend != null) && (msg.seq >= selstart.msg.seq) && (msg.seq <= selend.msg.seq));
+        }
+
         public void draw(GOut g) {
             g.chcolor(0, 0, 0, 128);
             g.frect(Coord.z, sz);
             g.chcolor();
-            int y = 0;
-            boolean sel = false;
+            double now = Utils.rtime();
             synchronized (msgs) {
-                for (Message msg : msgs) {
-                    if ((selstart != null) && (msg == selstart.msg))
-                        sel = true;
-                    int y1 = y - sb.val;
-                    int y2 = y1 + msg.sz().y;
-                    if ((y2 > 0) && (y1 < ih())) {
-                        if (sel)
-                            drawsel(g, msg, y1);
-                        g.image(msg.tex(), new Coord(0, y1));
-                    }
-                    if ((selend != null) && (msg == selend.msg))
-                        sel = false;
-                    y += msg.sz().y;
+                int n = msgs.size();
+                for (int i = msgidx(Math.max(sb.val, 0)); i < n; i++) {
+                    Message msg = msgs.get(i);
+                    int y1 = msgy[i] - sb.val;
+                    if (y1 >= ih())
+                        break;
+                    live.add(msg);
+                    Tex tex = msg.tex();
+                    /* Named messages are rendered anew when the
+                     * sender's name changes. */
+                    if (msg.sz().y != msgy[i + 1] - msgy[i])
+                        relayout(i);
+                    if (insel(msg))
+                        drawsel(g, msg, y1);
+                    g.image(tex, new Coord(0, y1));
+                    msg.lastdraw = now;
                 }
+                sb.max = logh() - ih();
             }
-            sb.max = y - ih();
             super.draw(g);
             updurgency(0);
         }
 
+        public void tick(double dt) {
+            super.tick(dt);
+            double now = Utils.rtime();
+            synchronized (msgs) {
+                for (Iterator<Message> i = live.iterator(); i.hasNext(); ) {
+                    Message msg = i.next();
+                    if ((now - msg.lastdraw > KEEPTEXT) && !insel(msg)) {
+                        msg.release();
+                        i.remove();
+                    }
+                }
+            }
+        }
+
         public boolean mousewheel(Coord c, int amount) {
             sb.ch(amount * 15);
             return (true);
@@ -300,9 +432,10 @@ public class ChatUI extends Widget {
             if (sb != null) {
                 sb.move(new Coord(sz.x - (12 - marg.x), 34 - marg.y));
                 sb.resize(ih() - sb.c.y);
-                int y = 0;
-                for (Message m : msgs)
-                    y += m.sz().y;
+                int y;
+                synchronized (msgs) {
+                    y = logh();
+                }
                 boolean b = sb.val >= sb.max;
                 sb.max = y - ih();
                 if (b)
@@ -339,17 +472,9 @@ public class ChatUI extends Widget {
         public final Comparator<CharPos> poscmp = new Comparator<CharPos>() {
             public int compare(CharPos a, CharPos b) {
                 if (a.msg != b.msg) {
-                    synchronized (msgs) {
-                        for (Message msg : msgs) {
-                            if (msg == a.msg)
-                                return (-1);
-                            else if (msg == b.msg)
-                                return (1);
-                        }
-                    }
-                    throw (new IllegalStateException("CharPos message is no longer contained in the log"));
+                    return (Long.compare(a.msg.seq, b.msg.seq));
                 } else if (a.part != b.part) {
-                    for (RichText.Part part = ((RichText) a.msg.text()).parts; part != null; part = part.next) {
+                    for (RichText.Part part = ((RichText) text(a.msg)).parts; part != null; part = part.next) {
                         if (part == a.part)
                             return (-1);
                         else
@@ -363,21 +488,19 @@ public class ChatUI extends Widget {
         };
 
         public Message messageat(Coord c, Coord hc) {
-            int y = -sb.val;
+            int ly = c.y + sb.val;
             synchronized (msgs) {
-                for (Message msg : msgs) {
-                    Coord sz = msg.sz();
-                    if ((c.y >= y) && (c.y < y + sz.y)) {
-                        if (hc != null) {
-                            hc.x = c.x;
-                            hc.y = c.y - y;
-                        }
-                        return (msg);
-                    }
-                    y += sz.y;
+                if (ly < 0)
+                    return (null);
+                int i = msgidx(ly);
+                if (i >= msgs.size())
+                    return (null);
+                if (hc != null) {
+                    hc.x = c.x;
+                    hc.y = ly - msgy[i];
                 }
+                return (msgs.get(i));
             }
-            return (null);
         }
 
         public CharPos charat(Coord c) {
@@ -385,10 +508,10 @@ public class ChatUI extends Widget {
                 if (msgs.size() < 1)
                     return (null);
                 Message msg = msgs.get(0);
-                if (!(msg.text() instanceof RichText))
+                if (!(text(msg) instanceof RichText))
                     return (null);
                 RichText.TextPart fp = null;
-                for (RichText.Part part = ((RichText) msg.text()).parts; part != null; part = part.next) {
+                for (RichText.Part part = ((RichText) text(msg)).parts; part != null; part = part.next) {
                     if (part instanceof RichText.TextPart) {
                         fp = (RichText.TextPart) part;
                         break;
@@ -401,13 +524,13 @@ public class ChatUI extends Widget {
 
             Coord hc = new Coord();
             Message msg = messageat(c, hc);
-            if ((msg == null) || !(msg.text() instanceof RichText))
+            if ((msg == null) || !(text(msg) instanceof RichText))
                 return (null);
-            RichText rt = (RichText) msg.text();
+            RichText rt = (RichText) text(msg);
             RichText.Part p = rt.partat(hc);
             if (p == null) {
                 RichText.TextPart lp = null;
-                for (RichText.Part part = ((RichText) msg.text()).parts; part != null; part = part.next) {
+                for (RichText.Part part = ((RichText) text(msg)).parts; part != null; part = part.next) {
                     if (part instanceof RichText.TextPart)
                         lp = (RichText.TextPart) part;
                 }
@@ -468,9 +591,11 @@ public class ChatUI extends Widget {
             synchronized (msgs) {
                 boolean sel = false;
                 for (Message msg : msgs) {
-                    if (!(msg.text() instanceof RichText))
+                    if (msg.seq < start.msg.seq)
+                        continue;
+                    if (!(text(msg) instanceof RichText))
                         continue;
-                    RichText rt = (RichText) msg.text();
+                    RichText rt = (RichText) text(msg);
                     RichText.Part part = null;
                     if (sel) {
                         part = rt.parts;
@@ -488,18 +613,18 @@ public class ChatUI extends Widget {
                             RichText.TextPart tp = (RichText.TextPart) part;
                             CharacterIterator iter = tp.ti();
                             int sch;
-                            if (tp == start.part)
+                            if ((msg == start.msg) && (tp == start.part))
                                 sch = tp.start + start.ch.getInsertionIndex();
                             else
                                 sch = tp.start;
                             int ech;
-                            if (tp == end.part)
+                            if ((msg == end.msg) && (tp == end.part))
                                 ech = tp.start + end.ch.getInsertionIndex();
                             else
                                 ech = tp.end;
                             for (int i = sch; i < ech; i++)
                                 buf.append(iter.setIndex(i));
-                            if (part == end.part) {
+                            if ((msg == end.msg) && (part == end.part)) {
                                 sel = false;
                                 break;
                             }
@@ -572,6 +697,9 @@ public class ChatUI extends Widget {
             chat.parent.setfocus(chat);
         }
 
+        /* Identical lines may share their rendered parts (see
+         * RichText.Foundry.render), so a position is only ever matched
+         * together with its message. */
         private void drawsel(GOut g, Message msg, int y) {
             RichText rt = (RichText) msg.text();
             boolean sel = msg != selstart.msg;
@@ -584,13 +712,13 @@ public class ChatUI extends Widget {
                 TextHitInfo a, b;
                 if (sel) {
                     a = TextHitInfo.leading(0);
-                } else if (tp == selstart.part) {
+                } else if ((msg == selstart.msg) && (tp == selstart.part)) {
                     a = selstart.ch;
                     sel = true;
                 } else {
                     continue;
                 }
-                if (tp == selend.part) {
+                if ((msg == selend.msg) && (tp == selend.part)) {
                     sel = false;
                     b = selend.ch;
                 } else {
@@ -811,14 +939,18 @@ public class ChatUI extends Widget {
             public final String text;
             public final int w;
             public final Color col;
+            /* Kept, since the text is rendered anew after release. */
+            private final String stamp;
             private String cn;
             private Text r = null;
+            private Coord rsz = null;
 
             public NamedMessage(int from, String text, Color col, int w) {
                 this.from = from;
                 this.text = text;
                 this.w = w;
                 this.col = col;
+                this.stamp = timestamp("");
             }
 
             public Text text() {
@@ -826,7 +958,10 @@ public class ChatUI extends Widget {
                 String nm = (b == null) ? "???" : (b.name);
                 if ((r == null) || !nm.equals(cn)) {
                     String tf = String.format("%s: %s", nm, text);
-                    r = fnd.render(RichText.Parser.quote(Config.chattimestamp ? timestamp(tf) : tf), w, TextAttribute.FOREGROUND, col);
+                    if (r != null)
+                        r.dispose();
+                    r = fnd.render(RichText.Parser.quote(Config.chattimestamp ? (stamp + tf) : tf), w, TextAttribute.FOREGROUND, col);
+                    rsz = r.sz();
                     cn = nm;
                 }
                 return (r);
@@ -837,10 +972,16 @@ public class ChatUI extends Widget {
             }
 
             public Coord sz() {
-                if (r == null)
-                    return (text().sz());
-                else
-                    return (r.sz());
+                if (rsz == null)
+                    text();
+                return (rsz);
+            }
+
+            public void release() {
+                if (r != null) {
+                    r.dispose();
+                    r = null;
+                }
             }
         }
 
@@ -931,14 +1072,18 @@ public class ChatUI extends Widget {
             public final String text;
             public final int w;
             public final Color col;
+            /* Kept, since the text is rendered anew after release. */
+            private final String stamp;
             private String cn;
             private Text r = null;
+            private Coord rsz = null;
 
             public NamedMessage(int from, String text, Color col, int w) {
                 this.from = from;
                 this.text = text;
                 this.w = w;
                 this.col = col;
+                this.stamp = timestamp("");
             }
 
             public Text text() {
@@ -946,7 +1091,10 @@ public class ChatUI extends Widget {
                 String nm = (b == null) ? "???" : (b.name);
                 if ((r == null) || !nm.equals(cn)) {
                     String tf = String.format("%s: %s", nm, text);
-                    r = fnd.render(RichText.Parser.quote(Config.chattimestamp ? timestamp(tf) : tf), w, TextAttribute.FOREGROUND, col);
+                    if (r != null)
+                        r.dispose();
+                    r = fnd.render(RichText.Parser.quote(Config.chattimestamp ? (stamp + tf) : tf), w, TextAttribute.FOREGROUND, col);
+                    rsz = r.sz();
                     cn = nm;
                 }
                 return (r);
@@ -957,10 +1105,16 @@ public class ChatUI extends Widget {
             }
 
             public Coord sz() {
-                if (r == null)
-                    return (text().sz());
-                else
-                    return (r.sz());
+                if (rsz == null)
+                    text();
+                return (rsz);
+            }
+
+            public void release() {
+                if (r != null) {
+                    r.dispose();
+                    r = null;
+                }
             }
         }
 
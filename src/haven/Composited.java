@@ -74,12 +74,17 @@ public class Composited implements Rendered, MapView.Clickable {
         }
 
         private void rebuild() {
+            PoseCache.Key key = (ipold > 0.0f) ? null : PoseCache.key(skel, mods);
+            if ((key != null) && (PoseCache.load(key, pose) != null))
+                return;
             pose.reset();
             for (PoseMod m : mods)
                 m.apply(pose);
             if (ipold > 0.0f)
                 pose.blend(old, ipold);
             pose.gbuild();
+            if (key != null)
+                PoseCache.store(key, pose);
         }
 
         public void set(float ipol) {
@@ -126,6 +126,7 @@ public class CraftDBWnd extends Window implements DTarget2, ObservableListener<M
     public CraftDBWnd() {
         //  super(WND_SZ.add(0, 20), "Craft window", "Craft window");
         super(Coord.z, "Craft window", "Craft window");
+        setcached(true);
         init();
         // CFG.REAL_TIME_CURIO.observe(cfg -> updateDescription(descriptionPagina));
         // CFG.SHOW_CURIO_LPH.observe(cfg -> updateDescription(descriptionPagina));
@@ -352,6 +352,7 @@ public class DefSettings {
             HiddenWndData.init();
             OverlayData.init();
             CustomQualityList.init();
+            ItemData.init();
 //            MovableWidget.initialization();
             //Internal lookups are no longer needed
             optint.get().close();
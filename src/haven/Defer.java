@@ -31,17 +31,34 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
 import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/* Work-stealing scheduler for deferred jobs. Jobs are sorted into
+ * priority lanes; each worker owns a set of lanes that jobs deferred
+ * from within the worker go to, jobs from other threads go to the
+ * shared lanes, and idle workers steal from the tail of other
+ * workers' lanes. The workers are kept as HackThreads in this thread
+ * group (rather than a ForkJoinPool's own threads) so that errors
+ * still end up in the ErrorHandler group above it. */
 public class Defer extends ThreadGroup {
     private static final Map<ThreadGroup, Defer> groups = new WeakHashMap<ThreadGroup, Defer>();
-    private final Queue<Future<?>> queue = new PrioQueue<Future<?>>();
-    private final Collection<Thread> pool = new LinkedList<Thread>();
-    private static final int maxthreads = 2;
+    private static final int maxthreads = Utils.clip(Runtime.getRuntime().availableProcessors() / 2, 2, 4);
+    public static final int NLANES = 3;
+    private final Lanes shared = new Lanes();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final Object idle = new Object();
+    private volatile Worker[] workers = new Worker[0];
+    private int nidle = 0;
+    public final Histogram qwait = new Histogram(), runtime = new Histogram();
+    public final AtomicLong nsubmitted = new AtomicLong(), ncompleted = new AtomicLong(), ncancelled = new AtomicLong();
+    public final AtomicLong nstolen = new AtomicLong(), nresched = new AtomicLong();
 
     public interface Callable<T> {
         public T call() throws InterruptedException;
@@ -105,6 +122,53 @@ public class Defer extends ThreadGroup {
         }
     }
 
+    /* Jobs nobody has asked for yet run at priority 0; get() and
+     * done() boost to 5, so those go in the first lane. */
+    private static int lane(int prio) {
+        if (prio >= 5)
+            return (0);
+        if (prio >= 0)
+            return (1);
+        return (2);
+    }
+
+    private static class Lanes {
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<Future<?>>[] q = new ArrayDeque[NLANES];
+
+        Lanes() {
+            for (int i = 0; i < NLANES; i++)
+                q[i] = new ArrayDeque<Future<?>>();
+        }
+
+        synchronized void add(Future<?> f, int lane) {
+            q[lane].addLast(f);
+        }
+
+        synchronized Future<?> poll(int lane) {
+            return (q[lane].pollFirst());
+        }
+
+        synchronized Future<?> steal(int lane) {
+            return (q[lane].pollLast());
+        }
+
+        synchronized void drain(Lanes to) {
+            for (int i = 0; i < NLANES; i++) {
+                Future<?> f;
+                while ((f = q[i].pollFirst()) != null)
+                    to.add(f, i);
+            }
+        }
+
+        synchronized int size() {
+            int ret = 0;
+            for (ArrayDeque<Future<?>> l : q)
+                ret += l.size();
+            return (ret);
+        }
+    }
+
     public class Future<T> implements Runnable, Prioritized {
         public final Callable<T> task;
         private final AccessControlContext secctx;
@@ -114,6 +178,12 @@ public class Defer extends ThreadGroup {
         private Throwable exc = null;
         private Loading lastload = null;
         private volatile Thread running = null;
+        /* The lane this future is currently queued in, or -1. Queue
+         * entries from any other lane are stale and get dropped by
+         * the workers, which is how boosting and cancellation remove
+         * a job from the queues without searching them. */
+        private int qlane = -1;
+        private long qtime;
 
         private Future(Callable<T> task) {
             this.task = task;
@@ -125,7 +195,9 @@ public class Defer extends ThreadGroup {
                 if (running != null) {
                     running.interrupt();
                 } else if (state != "done") {
+                    qlane = -1;
                     exc = new CancelledException();
+                    ncancelled.incrementAndGet();
                     chstate("done");
                 }
             }
@@ -138,12 +210,23 @@ public class Defer extends ThreadGroup {
             }
         }
 
+        private boolean claim(int lane) {
+            synchronized (this) {
+                if (qlane != lane)
+                    return (false);
+                qlane = -1;
+            }
+            qwait.add(System.nanoTime() - qtime);
+            return (true);
+        }
+
         public void run() {
             synchronized (this) {
                 if (state == "done")
                     return;
                 running = Thread.currentThread();
             }
+            long start = System.nanoTime();
             try {
                 try {
                     val = AccessController.doPrivileged(new PrivilegedExceptionAction<T>() {
@@ -160,6 +243,7 @@ public class Defer extends ThreadGroup {
                 chstate("done");
             } catch (InterruptedException exc) {
                 this.exc = new CancelledException(exc);
+                ncancelled.incrementAndGet();
                 chstate("done");
             } catch (Loading exc) {
                 lastload = exc;
@@ -167,8 +251,11 @@ public class Defer extends ThreadGroup {
                 this.exc = exc;
                 chstate("done");
             } finally {
+                runtime.add(System.nanoTime() - start);
                 if (state != "done")
                     chstate("resched");
+                else
+                    ncompleted.incrementAndGet();
                 running = null;
                 /* XXX: This is a race; a cancelling thread could have
                  * gotten the thread reference via running and then
@@ -189,6 +276,7 @@ public class Defer extends ThreadGroup {
                     return (val);
                 }
                 if (state == "resched") {
+                    nresched.incrementAndGet();
                     defer(this);
                     state = "";
                 }
@@ -204,6 +292,7 @@ public class Defer extends ThreadGroup {
             synchronized (this) {
                 boostprio(prio);
                 if (state == "resched") {
+                    nresched.incrementAndGet();
                     defer(this);
                     state = "";
                 }
@@ -221,16 +310,69 @@ public class Defer extends ThreadGroup {
 
         public void boostprio(int prio) {
             synchronized (this) {
-                if (this.prio < prio)
+                if (this.prio < prio) {
                     this.prio = prio;
+                    if ((qlane >= 0) && (lane(prio) < qlane))
+                        enqueue(this, lane(prio));
+                }
             }
         }
     }
 
     private class Worker extends HackThread {
+        private final Lanes local = new Lanes();
+
         private Worker() {
             super(Defer.this, null, "Worker thread");
             setDaemon(true);
+            setPriority(Thread.NORM_PRIORITY - 1);
+        }
+
+        private Future<?> steal(int lane) {
+            Worker[] cur = workers;
+            if (cur.length < 2)
+                return (null);
+            int o = ThreadLocalRandom.current().nextInt(cur.length);
+            for (int i = 0; i < cur.length; i++) {
+                Worker w = cur[(i + o) % cur.length];
+                if (w == this)
+                    continue;
+                Future<?> f = w.local.steal(lane);
+                if (f != null) {
+                    nstolen.incrementAndGet();
+                    return (f);
+                }
+            }
+            return (null);
+        }
+
+        private Future<?> next() throws InterruptedException {
+            long start = System.currentTimeMillis();
+            while (true) {
+                for (int lane = 0; lane < NLANES; lane++) {
+                    Future<?> f;
+                    if (((f = local.poll(lane)) != null) || ((f = shared.poll(lane)) != null) || ((f = steal(lane)) != null)) {
+                        pending.decrementAndGet();
+                        if (f.claim(lane))
+                            return (f);
+                        lane = -1;
+                    }
+                }
+                synchronized (idle) {
+                    if (pending.get() == 0) {
+                        if (System.currentTimeMillis() - start > 5000) {
+                            remworker(this);
+                            return (null);
+                        }
+                        nidle++;
+                        try {
+                            idle.wait(1000);
+                        } finally {
+                            nidle--;
+                        }
+                    }
+                }
+            }
         }
 
         public void run() {
@@ -238,14 +380,8 @@ public class Defer extends ThreadGroup {
                 while (true) {
                     Future<?> f;
                     try {
-                        long start = System.currentTimeMillis();
-                        synchronized (queue) {
-                            while ((f = queue.poll()) == null) {
-                                if (System.currentTimeMillis() - start > 5000)
-                                    return;
-                                queue.wait(1000);
-                            }
-                        }
+                        if ((f = next()) == null)
+                            return;
                     } catch (InterruptedException e) {
                         return;
                     }
@@ -253,13 +389,11 @@ public class Defer extends ThreadGroup {
                     f = null;
                 }
             } finally {
-                synchronized (queue) {
-                    pool.remove(this);
-                    if ((pool.size() < 1) && !queue.isEmpty()) {
-                        Thread n = new Worker();
-                        n.start();
-                        pool.add(n);
-                    }
+                synchronized (idle) {
+                    remworker(this);
+                    local.drain(shared);
+                    if ((workers.length < 1) && (pending.get() > 0))
+                        addworker();
                 }
             }
         }
@@ -269,30 +403,94 @@ public class Defer extends ThreadGroup {
         super(parent, "DPC threads");
     }
 
-    private void defer(final Future<?> f) {
-        synchronized (queue) {
-            boolean e = queue.isEmpty();
-            queue.add(f);
-            queue.notify();
-            if ((pool.isEmpty() || !e) && (pool.size() < maxthreads)) {
-                Thread n = AccessController.doPrivileged(new PrivilegedAction<Thread>() {
-                    public Thread run() {
-                        Thread ret = new Worker();
-                        ret.start();
-                        return (ret);
-                    }
-                });
-                pool.add(n);
+    /* Must be called with idle locked. */
+    private void addworker() {
+        Worker n = AccessController.doPrivileged(new PrivilegedAction<Worker>() {
+            public Worker run() {
+                return (new Worker());
             }
+        });
+        Worker[] nw = new Worker[workers.length + 1];
+        System.arraycopy(workers, 0, nw, 0, workers.length);
+        nw[workers.length] = n;
+        workers = nw;
+        n.start();
+    }
+
+    /* Must be called with idle locked. */
+    private void remworker(Worker w) {
+        ArrayList<Worker> nw = new ArrayList<Worker>(workers.length);
+        for (Worker c : workers) {
+            if (c != w)
+                nw.add(c);
+        }
+        if (nw.size() != workers.length)
+            workers = nw.toArray(new Worker[0]);
+    }
+
+    /* Must be called with f locked. */
+    private void enqueue(Future<?> f, int lane) {
+        f.qlane = lane;
+        Thread cur = Thread.currentThread();
+        if ((cur instanceof Worker) && (((Worker) cur).getThreadGroup() == this))
+            ((Worker) cur).local.add(f, lane);
+        else
+            shared.add(f, lane);
+        pending.incrementAndGet();
+        synchronized (idle) {
+            if (nidle > 0)
+                idle.notify();
+            else if (workers.length < maxthreads)
+                addworker();
+        }
+    }
+
+    private void defer(final Future<?> f) {
+        synchronized (f) {
+            f.qtime = System.nanoTime();
+            enqueue(f, lane(f.prio));
         }
     }
 
     public <T> Future<T> defer(Callable<T> task) {
         Future<T> f = new Future<T>(task);
+        nsubmitted.incrementAndGet();
         defer(f);
         return (f);
     }
 
+    public int qdepth() {
+        int ret = shared.size();
+        for (Worker w : workers)
+            ret += w.local.size();
+        return (ret);
+    }
+
+    public void report(java.io.PrintWriter out) {
+        out.printf("%s: %d workers (%d idle), %d queued\n", getParent().getName(), workers.length, nidle, qdepth());
+        out.printf("  submitted %d, completed %d, cancelled %d, rescheduled %d, stolen %d\n",
+                nsubmitted.get(), ncompleted.get(), ncancelled.get(), nresched.get(), nstolen.get());
+        out.println("  queue wait (ms): " + qwait.summary(1e6));
+        out.println("  run time (ms):   " + runtime.summary(1e6));
+    }
+
+    static {
+        Console.setscmd("deferstats", (cons, args) -> {
+            Collection<Defer> cur;
+            synchronized (groups) {
+                cur = new ArrayList<Defer>(groups.values());
+            }
+            for (Defer d : cur) {
+                if ((args.length >= 2) && args[1].equals("reset")) {
+                    d.qwait.reset();
+                    d.runtime.reset();
+                } else {
+                    d.report(cons.out);
+                }
+            }
+        });
+    }
+
     private static Defer getgroup() {
         return (AccessController.doPrivileged(new PrivilegedAction<Defer>() {
             public Defer run() {
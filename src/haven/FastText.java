@@ -45,6 +45,8 @@ public class FastText {
     }
 
     public static int textw(String text) {
+        if (GlyphText.usable(text))
+            return (GlyphText.get(fnd).width(text));
         int r = 0;
         for (int i = 0; i < text.length(); i++)
             r += ch(text.charAt(i)).sz().x;
@@ -52,6 +54,10 @@ public class FastText {
     }
 
     public static void aprint(GOut g, Coord c, double ax, double ay, String text) {
+        if (GlyphText.usable(text)) {
+            GlyphText.get(fnd).aprint(g, c, ax, ay, text);
+            return;
+        }
         Coord lc = new Coord(c);
         if (ax > 0)
             lc.x -= textw(text) * ax;
@@ -272,12 +272,16 @@ public class GItem extends AWidget implements ItemInfo.SpriteOwner, GSprite.Owne
                 sdt = (args.length > 1) ? new MessageBuf((byte[]) args[1]) : MessageBuf.nil;
                 spr = null;
             }
+            if (parent instanceof Inventory)
+                ((Inventory) parent).itemchanged(this);
         } else if (name == "tt") {
             info = null;
             if (rawinfo != null)
                 quality = null;
             rawinfo = new ItemInfo.Raw(args);
             filtered = 0;
+            if (parent instanceof Inventory)
+                ((Inventory) parent).itemchanged(this);
             if (sendttupdate) {
                 wdgmsg("ttupdate");
             }
@@ -31,6 +31,7 @@ import haven.glsl.ShaderMacro;
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
 import javax.media.opengl.GL3;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
@@ -117,6 +118,8 @@ public abstract class GLState {
         private int depid = -1;
         private final Slot<?>[] dep, rdep;
         private Slot[] grdep;
+        /* grdep as a bitset over dependency ids. */
+        private long[] gdmask = new long[0];
 
         public static enum Type {
             SYS, GEOM, DRAW
@@ -204,8 +207,12 @@ public abstract class GLState {
                     return (order.get(a) - order.get(b));
                 }
             };
-            for (Slot<?> s : slots)
+            for (Slot<?> s : slots) {
                 Arrays.sort(s.grdep, cmp);
+                s.gdmask = new long[words(slots.size())];
+                for (Slot<?> ds : s.grdep)
+                    setbit(s.gdmask, ds.depid);
+            }
         }
 
         public static void update() {
@@ -231,17 +238,41 @@ public abstract class GLState {
         }
     }
 
+    static int words(int bits) {
+        return ((bits + 63) >>> 6);
+    }
+
+    static boolean bit(long[] set, int i) {
+        return ((set[i >>> 6] & (1L << i)) != 0);
+    }
+
+    static void setbit(long[] set, int i) {
+        set[i >>> 6] |= 1L << i;
+    }
+
     public static class Buffer {
         private GLState[] states = new GLState[slotnum];
+        /* Bitset of the non-null elements of states, so that
+         * comparisons and diffs only visit the slots actually used. */
+        private long[] pres = new long[words(states.length)];
         public final GLConfig cfg;
 
         public Buffer(GLConfig cfg) {
             this.cfg = cfg;
         }
 
+        private void set(int i, GLState st) {
+            states[i] = st;
+            if (st == null)
+                pres[i >>> 6] &= ~(1L << i);
+            else
+                pres[i >>> 6] |= 1L << i;
+        }
+
         public Buffer copy() {
             Buffer ret = new Buffer(cfg);
             System.arraycopy(states, 0, ret.states, 0, states.length);
+            System.arraycopy(pres, 0, ret.pres, 0, pres.length);
             return (ret);
         }
 
@@ -250,17 +281,20 @@ public abstract class GLState {
             System.arraycopy(states, 0, dest.states, 0, states.length);
             for (int i = states.length; i < dest.states.length; i++)
                 dest.states[i] = null;
+            System.arraycopy(pres, 0, dest.pres, 0, pres.length);
+            for (int i = pres.length; i < dest.pres.length; i++)
+                dest.pres[i] = 0;
         }
 
         public void copy(Buffer dest, Slot.Type type) {
             dest.adjust();
             for (int i = 0; i < states.length && i < idlist.length; i++) {
                 if (idlist[i].type == type)
-                    dest.states[i] = states[i];
+                    dest.set(i, states[i]);
             }
             for (int i = states.length; i < dest.states.length && i < idlist.length; i++) {
                 if (idlist[i].type == type)
-                    dest.states[i] = null;
+                    dest.set(i, null);
             }
         }
 
@@ -268,57 +302,57 @@ public abstract class GLState {
             dest.adjust();
             for (int i = 0; i < states.length && i < idlist.length; i++) {
                 if (idlist[i].type != type)
-                    dest.states[i] = states[i];
+                    dest.set(i, states[i]);
             }
             for (int i = states.length; i < dest.states.length; i++) {
                 if (i < idlist.length && idlist[i].type != type) // NOTE: hotfix for IOOB exception
-                    dest.states[i] = null;
+                    dest.set(i, null);
             }
         }
 
         public int ihash() {
             int ret = 0;
-            for (int i = 0; i < states.length; i++) {
-                if ((idlist[i].instanced == null) && (states[i] != null))
-                    ret = (ret * 31) + System.identityHashCode(states[i]);
+            for (int w = 0; w < pres.length; w++) {
+                for (long m = pres[w]; m != 0; m &= m - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(m);
+                    if (idlist[i].instanced == null)
+                        ret = (ret * 31) + System.identityHashCode(states[i]);
+                }
             }
             return (ret);
         }
 
         public boolean iequals(Buffer o) {
-            GLState[] a, b;
-            int i = 0;
-
-            if (states.length > o.states.length) {
-                a = states;
-                b = o.states;
-            } else {
-                b = states;
-                a = o.states;
-            }
-            for (; i < b.length; i++) {
-                if ((idlist[i].instanced == null) && (a[i] != b[i]))
-                    return (false);
-            }
-            for (; i < a.length; i++) {
-                if ((idlist[i].instanced == null) && (a[i] != null))
-                    return (false);
+            long[] ap = pres, bp = o.pres;
+            for (int w = 0; w < Math.max(ap.length, bp.length); w++) {
+                long am = (w < ap.length) ? ap[w] : 0, bm = (w < bp.length) ? bp[w] : 0;
+                for (long m = am | bm; m != 0; m &= m - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(m);
+                    if ((idlist[i].instanced == null) && (get(i) != o.get(i)))
+                        return (false);
+                }
             }
             return (true);
         }
 
+        private GLState get(int i) {
+            return ((i < states.length) ? states[i] : null);
+        }
+
         private void adjust() {
             if (states.length < slotnum) {
                 GLState[] n = new GLState[slotnum];
                 System.arraycopy(states, 0, n, 0, states.length);
                 this.states = n;
+                if (pres.length < words(slotnum))
+                    pres = Arrays.copyOf(pres, words(slotnum));
             }
         }
 
         public <T extends GLState> void put(Slot<? super T> slot, T state) {
             if (states.length <= slot.id)
                 adjust();
-            states[slot.id] = state;
+            set(slot.id, state);
         }
 
         @SuppressWarnings("unchecked")
@@ -330,9 +364,9 @@ public abstract class GLState {
 
         public int hashCode() {
             int h = 0;
-            for (int i = 0; i < states.length; i++) {
-                if (states[i] != null)
-                    h = (h * 31) + states[i].hashCode();
+            for (int w = 0; w < pres.length; w++) {
+                for (long m = pres[w]; m != 0; m &= m - 1)
+                    h = (h * 31) + states[(w << 6) + Long.numberOfTrailingZeros(m)].hashCode();
             }
             return (h);
         }
@@ -341,23 +375,16 @@ public abstract class GLState {
             if (!(oo instanceof Buffer))
                 return (false);
             Buffer o = (Buffer) oo;
-            GLState[] a, b;
-            int i = 0;
-
-            if (states.length > o.states.length) {
-                a = states;
-                b = o.states;
-            } else {
-                b = states;
-                a = o.states;
-            }
-            for (; i < b.length; i++) {
-                if (!Utils.eq(a[i], b[i]))
-                    return (false);
-            }
-            for (; i < a.length; i++) {
-                if (a[i] != null)
+            long[] ap = pres, bp = o.pres;
+            for (int w = 0; w < Math.max(ap.length, bp.length); w++) {
+                long am = (w < ap.length) ? ap[w] : 0, bm = (w < bp.length) ? bp[w] : 0;
+                if (am != bm)
                     return (false);
+                for (long m = am; m != 0; m &= m - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(m);
+                    if ((states[i] != o.states[i]) && !states[i].equals(o.states[i]))
+                        return (false);
+                }
             }
             return (true);
         }
@@ -383,48 +410,52 @@ public abstract class GLState {
         }
     }
 
-    public static int bufdiff(Buffer f, Buffer t, boolean[] trans, boolean[] repl) {
+    /* Computes the transition from f to t as bitsets over dependency
+     * ids: trans for slots that can be transitioned directly, repl for
+     * slots that must be unapplied and reapplied (including all
+     * dependents of any changed slot). Returns the estimated cost. */
+    public static int bufdiff(Buffer f, Buffer t, long[] trans, long[] repl) {
         int cost = 0;
         f.adjust();
         t.adjust();
-        if (trans != null) {
-            for (int i = 0; i < trans.length; i++) {
-                trans[i] = false;
-                repl[i] = false;
-            }
-        }
-        for (int i = 0; i < f.states.length; i++) {
-            if (((f.states[i] == null) != (t.states[i] == null)) ||
-                    ((f.states[i] != null) && (t.states[i] != null) && !f.states[i].equals(t.states[i]))) {
-                if (!repl[i]) {
+        Arrays.fill(trans, 0);
+        Arrays.fill(repl, 0);
+        long[] fp = f.pres, tp = t.pres;
+        for (int w = 0; w < fp.length; w++) {
+            for (long m = fp[w] | tp[w]; m != 0; m &= m - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(m);
+                GLState fs = f.states[i], ts = t.states[i];
+                if ((fs == ts) || ((fs != null) && (ts != null) && fs.equals(ts)))
+                    continue;
+                Slot<?> sl = idlist[i];
+                if (!bit(repl, sl.depid)) {
                     int cat = -1, caf = -1;
-                    if ((t.states[i] != null) && (f.states[i] != null)) {
-                        cat = f.states[i].capplyto(t.states[i]);
-                        caf = t.states[i].capplyfrom(f.states[i]);
+                    if ((ts != null) && (fs != null)) {
+                        cat = fs.capplyto(ts);
+                        caf = ts.capplyfrom(fs);
                     }
                     if ((cat >= 0) && (caf >= 0)) {
                         cost += cat + caf;
-                        if (trans != null)
-                            trans[i] = true;
+                        setbit(trans, sl.depid);
                     } else {
-                        if (f.states[i] != null)
-                            cost += f.states[i].cunapply();
-                        if (t.states[i] != null)
-                            cost += t.states[i].capply();
-                        if (trans != null)
-                            repl[i] = true;
+                        if (fs != null)
+                            cost += fs.cunapply();
+                        if (ts != null)
+                            cost += ts.capply();
+                        setbit(repl, sl.depid);
                     }
                 }
-                for (Slot ds : idlist[i].grdep) {
-                    int id = ds.id;
-                    if (repl[id])
-                        continue;
-                    if (trans != null)
-                        repl[id] = true;
-                    if (t.states[id] != null)
-                        cost += t.states[id].cunapply();
-                    if (f.states[id] != null)
-                        cost += f.states[id].capply();
+                long[] gd = sl.gdmask;
+                for (int o = 0; o < gd.length; o++) {
+                    long nw = gd[o] & ~repl[o];
+                    repl[o] |= nw;
+                    for (; nw != 0; nw &= nw - 1) {
+                        int id = deplist[(o << 6) + Long.numberOfTrailingZeros(nw)].id;
+                        if (t.states[id] != null)
+                            cost += t.states[id].cunapply();
+                        if (f.states[id] != null)
+                            cost += f.states[id].capply();
+                    }
                 }
             }
         }
@@ -494,7 +525,7 @@ public abstract class GLState {
         private Buffer old, cur, next;
         public final CurrentGL cgl;
         public final GLConfig cfg;
-        private boolean[] trans = new boolean[0], repl = new boolean[0], adirty = new boolean[0];
+        private long[] trans = new long[0], repl = new long[0];
         private ShaderMacro[] shaders = new ShaderMacro[0], nshaders = new ShaderMacro[0];
         private int proghash = 0, nproghash = 0;
         public ShaderMacro.Program prog;
@@ -557,52 +588,57 @@ public abstract class GLState {
 
         public <T extends GLState> void apply(GOut g, Slot<T> slot, T state) {
             int id = slot.id;
-            next.states[id] = state;
+            next.set(id, state);
             GLState old = cur.states[id];
             if ((old == null) && (state == null)) {
             } else if ((old != null) && (state == null)) {
                 if (shaders[id] != null)
                     throw (new RuntimeException("Cannot quick-apply states with shaders"));
                 old.unapply(g);
-                cur.states[id] = null;
+                cur.set(id, null);
             } else if ((old == null) && (state != null)) {
                 if (state.shader() != null)
                     throw (new RuntimeException("Cannot quick-apply states with shaders"));
                 state.apply(g);
-                cur.states[id] = state;
+                cur.set(id, state);
             } else if ((old != null) && (state != null) && !old.equals(state)) {
                 if (state.shader() != shaders[id])
                     throw (new RuntimeException("Cannot quick-apply states with shader replacement"));
                 if (state.capplyfrom(old) >= 0) {
                     state.applyfrom(g, old);
-                    cur.states[id] = state;
+                    cur.set(id, state);
                 } else {
                     old.unapply(g);
-                    cur.states[id] = null;
+                    cur.set(id, null);
                     state.apply(g);
-                    cur.states[id] = state;
+                    cur.set(id, state);
                 }
             }
         }
 
         public void apply(GOut g) {
             Slot.update();
+            Recorder rec = GLState.rec;
+            if (rec != null)
+                rec.add(next);
             long st = 0;
             if (Config.profile) st = System.nanoTime();
             Slot<?>[] deplist = GLState.deplist;
-            if (trans.length < deplist.length) {
+            int nw = words(deplist.length);
+            if (shaders.length < deplist.length) {
                 synchronized (Slot.class) {
-                    trans = new boolean[deplist.length];
-                    repl = new boolean[deplist.length];
+                    trans = new long[nw];
+                    repl = new long[nw];
                     shaders = Utils.extend(shaders, deplist.length);
                     nshaders = Utils.extend(shaders, deplist.length);
                 }
             }
             bufdiff(cur, next, trans, repl);
             nproghash = proghash;
-            for (int i = trans.length - 1; i >= 0; i--) {
-                nshaders[i] = shaders[i];
-                if (repl[i] || trans[i]) {
+            System.arraycopy(shaders, 0, nshaders, 0, shaders.length);
+            for (int w = 0; w < nw; w++) {
+                for (long m = trans[w] | repl[w]; m != 0; m &= m - 1) {
+                    int i = deplist[(w << 6) + Long.numberOfTrailingZeros(m)].id;
                     GLState nst = next.states[i];
                     ShaderMacro ns = (nst == null) ? null : nst.shader();
                     if (ns != nshaders[i]) {
@@ -625,15 +661,17 @@ public abstract class GLState {
                 }
             }
             cur.copy(old);
-            for (int i = deplist.length - 1; i >= 0; i--) {
-                int id = deplist[i].id;
-                if (repl[id]) {
+            for (int w = nw - 1; w >= 0; w--) {
+                for (long m = repl[w]; m != 0; ) {
+                    int b = 63 - Long.numberOfLeadingZeros(m);
+                    m &= ~(1L << b);
+                    int id = deplist[(w << 6) + b].id;
                     if (cur.states[id] != null) {
                         cur.states[id].unapply(g);
                         if (debug)
                             stcheckerr(g, "unapply", cur.states[id]);
                     }
-                    cur.states[id] = null;
+                    cur.set(id, null);
                     proghash ^= System.identityHashCode(shaders[id]);
                     shaders[id] = null;
                 }
@@ -644,35 +682,15 @@ public abstract class GLState {
              * provided they do so before they have changed any GL
              * state. If they exit non-locally after GL state has
              * been altered, future results are undefined. */
-            for (int i = 0; i < deplist.length; i++) {
-                int id = deplist[i].id;
-                if (repl[id]) {
-                    if (next.states[id] != null) {
-                        next.states[id].apply(g);
-                        cur.states[id] = next.states[id];
-                        proghash ^= System.identityHashCode(shaders[id]) ^ System.identityHashCode(nshaders[id]);
-                        shaders[id] = nshaders[id];
-                        if (debug)
-                            stcheckerr(g, "apply", cur.states[id]);
-                    }
-                    if (!pdirty)
-                        prog.adirty(deplist[i]);
-                } else if (trans[id]) {
-                    cur.states[id].applyto(g, next.states[id]);
-                    if (debug)
-                        stcheckerr(g, "applyto", cur.states[id]);
-                    next.states[id].applyfrom(g, cur.states[id]);
-                    cur.states[id] = next.states[id];
-                    proghash ^= System.identityHashCode(shaders[id]) ^ System.identityHashCode(nshaders[id]);
-                    shaders[id] = nshaders[id];
-                    if (debug)
-                        stcheckerr(g, "applyfrom", cur.states[id]);
-                    if (!pdirty)
-                        prog.adirty(deplist[i]);
-                } else if (pdirty && (shaders[id] != null)) {
-                    cur.states[id].reapply(g);
-                    if (debug)
-                        stcheckerr(g, "reapply", cur.states[id]);
+            if (pdirty) {
+                /* Every state with a shader must be reapplied to the
+                 * new program, so all slots need visiting. */
+                for (int i = 0; i < deplist.length; i++)
+                    apply1(g, deplist[i]);
+            } else {
+                for (int w = 0; w < nw; w++) {
+                    for (long m = trans[w] | repl[w]; m != 0; m &= m - 1)
+                        apply1(g, deplist[(w << 6) + Long.numberOfTrailingZeros(m)]);
                 }
             }
             if (cproj != proj) {
@@ -686,6 +704,38 @@ public abstract class GLState {
                 time += System.nanoTime() - st;
         }
 
+        private void apply1(GOut g, Slot<?> sl) {
+            int id = sl.id;
+            if (bit(repl, sl.depid)) {
+                if (next.states[id] != null) {
+                    next.states[id].apply(g);
+                    cur.set(id, next.states[id]);
+                    proghash ^= System.identityHashCode(shaders[id]) ^ System.identityHashCode(nshaders[id]);
+                    shaders[id] = nshaders[id];
+                    if (debug)
+                        stcheckerr(g, "apply", cur.states[id]);
+                }
+                if (!pdirty)
+                    prog.adirty(sl);
+            } else if (bit(trans, sl.depid)) {
+                cur.states[id].applyto(g, next.states[id]);
+                if (debug)
+                    stcheckerr(g, "applyto", cur.states[id]);
+                next.states[id].applyfrom(g, cur.states[id]);
+                cur.set(id, next.states[id]);
+                proghash ^= System.identityHashCode(shaders[id]) ^ System.identityHashCode(nshaders[id]);
+                shaders[id] = nshaders[id];
+                if (debug)
+                    stcheckerr(g, "applyfrom", cur.states[id]);
+                if (!pdirty)
+                    prog.adirty(sl);
+            } else if (pdirty && (shaders[id] != null)) {
+                cur.states[id].reapply(g);
+                if (debug)
+                    stcheckerr(g, "reapply", cur.states[id]);
+            }
+        }
+
         public boolean inststate(List<Buffer> instances) {
             Buffer st = GLState.inststate(cfg, instances);
             if (st == null)
@@ -1004,7 +1054,219 @@ public abstract class GLState {
         }
     };
 
+    /* Records the buffers applied by Appliers to a file, for replay
+     * by main(). The slots are written with their dependencies, and
+     * each buffer as the slots it sets, with a number per state such
+     * that equal states get equal numbers. */
+    private static class Recorder {
+        final String file;
+        final int max;
+        final List<int[]> bufs = new ArrayList<int[]>();
+        final Map<GLState, Integer> ids = new HashMap<GLState, Integer>();
+
+        Recorder(String file, int max) {
+            this.file = file;
+            this.max = max;
+        }
+
+        synchronized void add(Buffer buf) {
+            int n = 0;
+            for (long w : buf.pres)
+                n += Long.bitCount(w);
+            int[] rb = new int[n * 2];
+            int o = 0;
+            for (int w = 0; w < buf.pres.length; w++) {
+                for (long m = buf.pres[w]; m != 0; m &= m - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(m);
+                    Integer id = ids.get(buf.states[i]);
+                    if (id == null)
+                        ids.put(buf.states[i], id = ids.size());
+                    rb[o++] = i;
+                    rb[o++] = id;
+                }
+            }
+            bufs.add(rb);
+            if (bufs.size() >= max) {
+                rec = null;
+                try {
+                    write();
+                } catch (java.io.IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private static String ids(Slot<?>[] slots) {
+            StringBuilder buf = new StringBuilder("-");
+            for (Slot<?> s : slots)
+                buf.append(' ').append(s.id);
+            return (buf.toString());
+        }
+
+        synchronized void write() throws java.io.IOException {
+            try (java.io.PrintWriter out = new java.io.PrintWriter(new java.io.FileWriter(file))) {
+                synchronized (Slot.class) {
+                    for (Slot<?> s : idlist)
+                        out.printf("s %d %s dep %s rdep %s\n", s.id, s.type, ids(s.dep), ids(s.rdep));
+                }
+                for (int[] rb : bufs) {
+                    out.print("b");
+                    for (int i = 0; i < rb.length; i += 2)
+                        out.printf(" %d:%d", rb[i], rb[i + 1]);
+                    out.println();
+                }
+            }
+        }
+    }
+
+    private static volatile Recorder rec = null;
+
+    private static class Stub extends GLState {
+        public void apply(GOut g) {
+        }
+
+        public void unapply(GOut g) {
+        }
+
+        public void prep(Buffer buf) {
+        }
+    }
+
+    /* Reads a recording made by Recorder, registering slots in its
+     * place. This must be done before any other slots have been. */
+    private static List<Buffer> load(String file) throws java.io.IOException {
+        if (slotnum != 0)
+            throw (new IllegalStateException("slots already registered"));
+        List<Slot<Stub>> slots = new ArrayList<Slot<Stub>>();
+        Map<Integer, Stub> states = new HashMap<Integer, Stub>();
+        List<Buffer> ret = new ArrayList<Buffer>();
+        try (java.io.BufferedReader in = new java.io.BufferedReader(new java.io.FileReader(file))) {
+            String ln;
+            while ((ln = in.readLine()) != null) {
+                String[] w = ln.split(" ");
+                if (w[0].equals("s")) {
+                    List<Slot<?>> dep = new ArrayList<Slot<?>>(), rdep = new ArrayList<Slot<?>>();
+                    List<Slot<?>> cur = null;
+                    for (int i = 3; i < w.length; i++) {
+                        if (w[i].equals("dep"))
+                            cur = dep;
+                        else if (w[i].equals("rdep"))
+                            cur = rdep;
+                        else if (!w[i].equals("-"))
+                            cur.add(slots.get(Integer.parseInt(w[i])));
+                    }
+                    slots.add(new Slot<Stub>(Slot.Type.valueOf(w[2]), Stub.class, dep.toArray(new Slot<?>[0]), rdep.toArray(new Slot<?>[0])));
+                } else if (w[0].equals("b")) {
+                    Buffer buf = new Buffer(null);
+                    for (int i = 1; i < w.length; i++) {
+                        int p = w[i].indexOf(':');
+                        Slot<Stub> slot = slots.get(Integer.parseInt(w[i].substring(0, p)));
+                        Stub st = states.computeIfAbsent(Integer.parseInt(w[i].substring(p + 1)), k -> new Stub());
+                        buf.put(slot, st);
+                    }
+                    ret.add(buf);
+                }
+            }
+        }
+        Slot.update();
+        return (ret);
+    }
+
+    /* The plain per-slot diff that bufdiff replaced, for comparison. */
+    private static int refdiff(Buffer f, Buffer t, boolean[] trans, boolean[] repl) {
+        int cost = 0;
+        f.adjust();
+        t.adjust();
+        Arrays.fill(trans, false);
+        Arrays.fill(repl, false);
+        for (int i = 0; i < f.states.length; i++) {
+            GLState fs = f.states[i], ts = t.states[i];
+            if ((fs == ts) || ((fs != null) && (ts != null) && fs.equals(ts)))
+                continue;
+            if (!repl[i]) {
+                int cat = -1, caf = -1;
+                if ((ts != null) && (fs != null)) {
+                    cat = fs.capplyto(ts);
+                    caf = ts.capplyfrom(fs);
+                }
+                if ((cat >= 0) && (caf >= 0)) {
+                    cost += cat + caf;
+                    trans[i] = true;
+                } else {
+                    if (fs != null)
+                        cost += fs.cunapply();
+                    if (ts != null)
+                        cost += ts.capply();
+                    repl[i] = true;
+                }
+            }
+            for (Slot ds : idlist[i].grdep) {
+                int id = ds.id;
+                if (repl[id])
+                    continue;
+                repl[id] = true;
+                if (t.states[id] != null)
+                    cost += t.states[id].cunapply();
+                if (f.states[id] != null)
+                    cost += f.states[id].capply();
+            }
+        }
+        return (cost);
+    }
+
+    /* Replays a recording made with the glrec command, timing the
+     * diffing, hashing and comparison done for each transition. */
+    public static void main(String[] args) throws Exception {
+        String cmd = args[0].intern();
+        if (cmd == "replay") {
+            PosixArgs opt = PosixArgs.getopt(args, 1, "r:");
+            int rounds = 50;
+            for (char c : opt.parsed()) {
+                if (c == 'r')
+                    rounds = Integer.parseInt(opt.arg);
+            }
+            Buffer[] bufs = load(opt.rest[0]).toArray(new Buffer[0]);
+            long[] trans = new long[words(deplist.length)], repl = new long[words(deplist.length)];
+            boolean[] btrans = new boolean[slotnum], brepl = new boolean[slotnum];
+            int n = bufs.length - 1;
+            System.out.printf("%d slots, %d buffers\n", slotnum, bufs.length);
+            for (int r = 0; r < rounds; r++) {
+                int c1 = 0, c2 = 0, h = 0;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                    c1 += bufdiff(bufs[i], bufs[i + 1], trans, repl);
+                long t1 = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                    c2 += refdiff(bufs[i], bufs[i + 1], btrans, brepl);
+                long t2 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    h += bufs[i + 1].ihash();
+                    if (bufs[i + 1].iequals(bufs[i]))
+                        h++;
+                }
+                long t3 = System.nanoTime();
+                if (c1 != c2)
+                    throw (new AssertionError("costs differ: " + c1 + " != " + c2));
+                System.out.printf("%d: bufdiff %.1f ns, per-slot %.1f ns, ihash/iequals %.1f ns (%d)\n", r,
+                        (double) (t1 - t0) / n, (double) (t2 - t1) / n, (double) (t3 - t2) / n, h);
+            }
+        }
+    }
+
     static {
         Console.setscmd("applydb", (cons, args) -> Applier.debug = Utils.parsebool(args[1], false));
+        Console.setscmd("glrec", (cons, args) -> {
+            if (args.length < 2) {
+                Recorder r = rec;
+                cons.out.printf("%s\n", (r == null) ? "not recording" : String.format("%d buffers to %s", r.bufs.size(), r.file));
+            } else if (args[1].equals("stop")) {
+                Recorder r = rec;
+                rec = null;
+                if (r != null)
+                    r.write();
+            } else {
+                rec = new Recorder(args[1], (args.length > 2) ? Integer.parseInt(args[2]) : 100000);
+            }
+        });
     }
 }
@@ -35,6 +35,11 @@ import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GOut {
     public final static boolean glerror = false;
@@ -273,7 +278,171 @@ public class GOut {
     public void image(Resource.Image img, Coord c) {
         if (img == null)
             return;
-        image(img.tex(), c.add(img.o));
+        icon(img, c.add(img.o));
+    }
+
+    private Quads single = null;
+
+    public void image(IconAtlas.Region r, Coord c, Coord sz) {
+        if (single == null)
+            single = new Quads();
+        single.image(r, c, sz);
+        single.flush();
+    }
+
+    /* Draw img at c, disregarding its offset, from the icon atlas if
+     * possible. */
+    public void icon(Resource.Image img, Coord c) {
+        if (img == null)
+            return;
+        IconAtlas.Region r = IconAtlas.get(img);
+        if (r != null)
+            image(r, c, r.sz);
+        else
+            image(img.tex(), c);
+    }
+
+    /* Draw tex at c, scaled to sz, from the icon atlas if possible. */
+    public void icon(Tex tex, Coord c, Coord sz) {
+        if (tex == null)
+            return;
+        IconAtlas.Region r = IconAtlas.get(tex);
+        if (r != null)
+            image(r, c, sz);
+        else
+            image(tex, c, sz);
+    }
+
+    public void icon(Tex tex, Coord c) {
+        if (tex != null)
+            icon(tex, c, tex.sz());
+    }
+
+    /* Collects textured quads and draws them with a single state
+     * change and glBegin/glEnd per distinct texture when flushed.
+     * Quads of different textures are drawn grouped by texture, in
+     * order of first use, so only quads that do not overlap, or that
+     * share a texture, may be batched together. Quads are clipped to
+     * the bounds of this GOut as they are added. */
+    public class Quads {
+        private final Map<Tex, Batch> batches = new LinkedHashMap<>();
+        /* Batches emptied by flush(), for reuse. */
+        private final List<Batch> free = new ArrayList<>();
+
+        private class Batch {
+            float[] v = new float[64];
+            int n = 0;
+
+            private void vtx(float u, float t, float x, float y) {
+                v[n++] = u;
+                v[n++] = t;
+                v[n++] = x;
+                v[n++] = y;
+            }
+
+            void add(float x1, float y1, float x2, float y2, float u1, float v1, float u2, float v2) {
+                if (n + 16 > v.length)
+                    v = Arrays.copyOf(v, v.length * 2);
+                vtx(u1, v1, x1, y1);
+                vtx(u2, v1, x2, y1);
+                vtx(u2, v2, x2, y2);
+                vtx(u1, v2, x1, y2);
+            }
+        }
+
+        /* Adds the texture region (u1, v1)-(u2, v2) of tex, drawn at c
+         * with size sz. */
+        public void add(Tex tex, Coord c, Coord sz, float u1, float v1, float u2, float v2) {
+            if ((tex == null) || (sz.x == 0) || (sz.y == 0))
+                return;
+            int x1 = c.x + tx.x, y1 = c.y + tx.y, x2 = x1 + sz.x, y2 = y1 + sz.y;
+            int cx1 = ul.x, cy1 = ul.y, cx2 = ul.x + GOut.this.sz.x, cy2 = ul.y + GOut.this.sz.y;
+            if ((x1 >= cx2) || (y1 >= cy2) || (x2 <= cx1) || (y2 <= cy1))
+                return;
+            float du = (u2 - u1) / sz.x, dv = (v2 - v1) / sz.y;
+            float nu1 = u1, nv1 = v1, nu2 = u2, nv2 = v2;
+            if (x1 < cx1) {
+                nu1 = u1 + (du * (cx1 - x1));
+                x1 = cx1;
+            }
+            if (y1 < cy1) {
+                nv1 = v1 + (dv * (cy1 - y1));
+                y1 = cy1;
+            }
+            if (x2 > cx2) {
+                nu2 = u2 - (du * (x2 - cx2));
+                x2 = cx2;
+            }
+            if (y2 > cy2) {
+                nv2 = v2 - (dv * (y2 - cy2));
+                y2 = cy2;
+            }
+            Batch b = batches.get(tex);
+            if (b == null)
+                batches.put(tex, b = free.isEmpty() ? new Batch() : free.remove(free.size() - 1));
+            b.add(x1, y1, x2, y2, nu1, nv1, nu2, nv2);
+        }
+
+        public void image(Tex tex, Coord c) {
+            if (tex == null)
+                return;
+            Coord sz = tex.sz();
+            add(tex, c, sz, tex.tcx(0), tex.tcy(0), tex.tcx(sz.x), tex.tcy(sz.y));
+        }
+
+        public void image(IconAtlas.Region r, Coord c, Coord sz) {
+            add(r.tex(), c, sz, r.tx1, r.ty1, r.tx2, r.ty2);
+        }
+
+        public void icon(Resource.Image img, Coord c) {
+            if (img == null)
+                return;
+            IconAtlas.Region r = IconAtlas.get(img);
+            if (r != null)
+                image(r, c, r.sz);
+            else
+                image(img.tex(), c);
+        }
+
+        public void icon(Tex tex, Coord c) {
+            if (tex == null)
+                return;
+            IconAtlas.Region r = IconAtlas.get(tex);
+            if (r != null)
+                image(r, c, r.sz);
+            else
+                image(tex, c);
+        }
+
+        public void flush() {
+            if (batches.isEmpty())
+                return;
+            for (Map.Entry<Tex, Batch> e : batches.entrySet()) {
+                Batch b = e.getValue();
+                free.add(b);
+                st.set(cur2d);
+                st.prep(e.getKey().draw());
+                apply();
+                if (TexGL.disableall) {
+                    b.n = 0;
+                    continue;
+                }
+                float[] d = b.v;
+                gl.glBegin(GL2.GL_QUADS);
+                for (int i = 0; i < b.n; i += 4) {
+                    gl.glTexCoord2f(d[i], d[i + 1]);
+                    gl.glVertex2f(d[i + 2], d[i + 3]);
+                }
+                gl.glEnd();
+                b.n = 0;
+            }
+            batches.clear();
+            checkerr();
+        }
+    }
+
+    public Quads quads() {
+        return (new Quads());
     }
 
     /* Draw texture at c, quite simply. */
@@ -451,6 +620,10 @@ public class GOut {
     }
 
     public void atext(String text, Coord c, double ax, double ay) {
+        if (GlyphText.usable(text)) {
+            GlyphText.get(Text.std).aprint(this, c, ax, ay, text);
+            return;
+        }
         Text t = Text.render(text);
         Tex T = t.tex();
         Coord sz = t.sz();
@@ -460,6 +633,10 @@ public class GOut {
     }
 
     public void atext(String text, Coord c, double ax, double ay, Text.Foundry foundry) {
+        if (GlyphText.usable(text)) {
+            GlyphText.get(foundry).aprint(this, c, ax, ay, text);
+            return;
+        }
         Text t = Text.render(text, Color.WHITE, foundry);
         Tex T = t.tex();
         Coord sz = t.sz();
@@ -469,6 +646,10 @@ public class GOut {
     }
 
     public void atextstroked(String text, Coord c, double ax, double ay, Color color, Color stroke, Text.Foundry foundry) {
+        if (GlyphText.usable(text)) {
+            GlyphText.get(foundry).aprint(this, c, ax, ay, text, color, stroke);
+            return;
+        }
         Text t = Text.renderstroked(text, color, stroke, foundry);
         Tex T = t.tex();
         Coord sz = t.sz();
@@ -163,7 +163,18 @@ public class GameUI extends ConsoleHost implements Console.Directory {
         }
     }
 
+    /* Construction times of the last GameUI, in milliseconds, for
+     * keeping an eye on login time. */
+    public static double ctortime, addedtime, optstime;
+
+    static {
+        Console.setscmd("guitime", (cons, args) -> {
+            cons.out.printf("last GameUI: %.1f ms constructing (%.1f ms options), %.1f ms adding\n", ctortime, optstime, addedtime);
+        });
+    }
+
     public GameUI(String chrid, long plid, String genus) {
+        long st = System.nanoTime();
         this.chrid = chrid;
         this.plid = plid;
         this.genus = genus;
@@ -213,8 +224,10 @@ public class GameUI extends ConsoleHost implements Console.Directory {
             }
         }, new Coord(HavenPanel.w / 2 - 360 / 2, umpanel.sz.y));
 
+        long ost = System.nanoTime();
         opts = add(new OptWnd());
         opts.hide();
+        optstime = (System.nanoTime() - ost) / 1e6;
 
 
         quickslots = new QuickSlotsWdg();
@@ -252,6 +265,7 @@ public class GameUI extends ConsoleHost implements Console.Directory {
         else if (!Config.showTroughrad && !Config.showBeehiverad)
             saferadius = 1;
         fixAlarms();
+        ctortime = (System.nanoTime() - st) / 1e6;
     }
 
     @Override
@@ -261,6 +275,7 @@ public class GameUI extends ConsoleHost implements Console.Directory {
     }
 
     protected void added() {
+        long st = System.nanoTime();
         resize(parent.sz);
         ui.gui = this;
         ui.cons.out = new java.io.PrintWriter(new java.io.Writer() {
@@ -295,7 +310,8 @@ public class GameUI extends ConsoleHost implements Console.Directory {
             Utils.loadprefchklist("iconssel_" + chrid, Config.icons);
             opts.setMapSettings();
             Config.discordchat = Utils.getprefb("discordchat_" + chrid, false);
-            opts.discordcheckbox.a = Config.discordchat;
+            if (opts.discordcheckbox != null)
+                opts.discordcheckbox.a = Config.discordchat;
         }
         zerg = add(new Zergwnd(), new Coord(187, 50));
         if (!Config.autowindows.get("Kith & Kin").selected)
@@ -339,6 +355,7 @@ public class GameUI extends ConsoleHost implements Console.Directory {
             ui.root.sessionDisplay.unlink();
             add(ui.root.sessionDisplay);
         }
+        addedtime = (System.nanoTime() - st) / 1e6;
     }
 
     @Override
@@ -844,8 +861,12 @@ public class GameUI extends ConsoleHost implements Console.Directory {
     }
 
     public void toggleGridBinds() {
-        opts.menugridcheckbox.set(!opts.menugridcheckbox.a);
-        if (opts.menugridcheckbox.a)
+        boolean val = !Config.disablemenugrid;
+        Utils.setprefb("disablemenugrid", val);
+        Config.disablemenugrid = val;
+        if (opts.menugridcheckbox != null)
+            opts.menugridcheckbox.a = val;
+        if (val)
             msg("Menugrid keybinds are now disabled!", Color.white);
         else
             msg("Menugrid keybinds are now enabled!", Color.white);
@@ -0,0 +1,311 @@
+package haven;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/* Text drawn from per-glyph images packed into the icon atlas, for
+ * short strings that change often (counters, meters, debug output),
+ * where rendering every new string to its own image and texture would
+ * cost an upload each time. Glyphs are rendered once, in white, and
+ * tinted when drawn; strings are drawn as one batch of quads. Glyph
+ * positions follow the font's advances and pair kerning as reported
+ * by the AWT font metrics, so the result matches Text.Foundry.render
+ * up to rounding. Stroked text draws every glyph's outline before any
+ * fill, as Foundry.renderstroked does. Glyphs have atlas pages of their
+ * own, so that they neither evict nor are evicted by icons; a glyph
+ * not yet uploaded with its page is drawn from its own texture until
+ * it is. */
+public class GlyphText {
+    public static boolean enabled = Utils.getprefb("glyphtext", true);
+    /* Longer strings are better off as a single image. */
+    public static final int MAXLEN = 64;
+    private static final int PAD = 2;
+    private static final IconAtlas atlas = new IconAtlas("glyphs", 2);
+    /* Keyed weakly on the foundry, which the values must therefore
+     * not refer to. */
+    private static final Map<Text.Foundry, GlyphText> sets = new WeakHashMap<>();
+    private final Font font;
+    private final boolean aa;
+    private final FontMetrics m;
+    private final int asc, h;
+    private final Glyph[] low = new Glyph[256];
+    private final Map<Character, Glyph> high = new HashMap<>();
+    private final Map<Integer, Integer> kern = new HashMap<>();
+
+    private class Glyph {
+        final char c;
+        final int adv;
+        BufferedImage img, simg;
+        Tex tex, stex;
+        IconAtlas.Region r, sr;
+
+        Glyph(char c) {
+            this.c = c;
+            this.adv = m.charWidth(c);
+        }
+
+        private BufferedImage mkimg(boolean stroke) {
+            BufferedImage ret = TexI.mkbuf(new Coord(adv + (PAD * 2), h));
+            Graphics g = ret.createGraphics();
+            if (aa)
+                Utils.AA(g);
+            g.setFont(font);
+            g.setColor(Color.WHITE);
+            String s = Character.toString(c);
+            if (stroke) {
+                g.drawString(s, PAD - 1, asc);
+                g.drawString(s, PAD + 1, asc);
+                g.drawString(s, PAD, asc - 1);
+                g.drawString(s, PAD, asc + 1);
+            } else {
+                g.drawString(s, PAD, asc);
+            }
+            g.dispose();
+            return (ret);
+        }
+
+        void draw(GOut.Quads q, Coord c, boolean stroke) {
+            if (adv == 0)
+                return;
+            Coord ul = c.sub(PAD, 0);
+            if (stroke) {
+                if (simg == null)
+                    simg = mkimg(true);
+                if ((sr == null) || !sr.valid())
+                    sr = atlas.region(simg, simg);
+                if (sr != null) {
+                    q.image(sr, ul, sr.sz);
+                    if (stex != null) {
+                        stex.dispose();
+                        stex = null;
+                    }
+                } else {
+                    if (stex == null)
+                        stex = new TexI(simg);
+                    q.image(stex, ul);
+                }
+            } else {
+                if (img == null)
+                    img = mkimg(false);
+                if ((r == null) || !r.valid())
+                    r = atlas.region(img, img);
+                if (r != null) {
+                    q.image(r, ul, r.sz);
+                    if (tex != null) {
+                        tex.dispose();
+                        tex = null;
+                    }
+                } else {
+                    if (tex == null)
+                        tex = new TexI(img);
+                    q.image(tex, ul);
+                }
+            }
+        }
+    }
+
+    private GlyphText(Text.Foundry fnd) {
+        this.font = fnd.font;
+        this.aa = fnd.aa;
+        this.m = fnd.metrics();
+        this.asc = m.getAscent();
+        this.h = fnd.height();
+    }
+
+    public static GlyphText get(Text.Foundry fnd) {
+        synchronized (sets) {
+            GlyphText ret = sets.get(fnd);
+            if (ret == null)
+                sets.put(fnd, ret = new GlyphText(fnd));
+            return (ret);
+        }
+    }
+
+    /* Whether text can be drawn from glyphs at all. */
+    public static boolean usable(String text) {
+        if (!enabled || (text.length() > MAXLEN))
+            return (false);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c < 32) || Character.isSurrogate(c))
+                return (false);
+        }
+        return (true);
+    }
+
+    private Glyph glyph(char c) {
+        if (c < low.length) {
+            if (low[c] == null)
+                low[c] = new Glyph(c);
+            return (low[c]);
+        }
+        Glyph ret = high.get(c);
+        if (ret == null)
+            high.put(c, ret = new Glyph(c));
+        return (ret);
+    }
+
+    private int kern(char a, char b) {
+        Integer k = (a << 16) | b;
+        Integer ret = kern.get(k);
+        if (ret == null) {
+            ret = m.stringWidth(new String(new char[]{a, b})) - m.charWidth(a) - m.charWidth(b);
+            kern.put(k, ret);
+        }
+        return (ret);
+    }
+
+    public synchronized int width(String text) {
+        int w = 0;
+        for (int i = 0; i < text.length(); i++) {
+            w += glyph(text.charAt(i)).adv;
+            if (i > 0)
+                w += kern(text.charAt(i - 1), text.charAt(i));
+        }
+        return (w);
+    }
+
+    public Coord size(String text, boolean stroked) {
+        int w = Math.max(width(text), 1);
+        return (new Coord(stroked ? (w + 2) : w, h));
+    }
+
+    private synchronized void glyphs(GOut.Quads q, Coord c, String text, boolean stroke) {
+        int x = c.x;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (i > 0)
+                x += kern(text.charAt(i - 1), ch);
+            Glyph gl = glyph(ch);
+            gl.draw(q, new Coord(x, c.y), stroke);
+            x += gl.adv;
+        }
+    }
+
+    private static Color mul(Color a, Color b) {
+        return (new Color((a.getRed() * b.getRed()) / 255, (a.getGreen() * b.getGreen()) / 255,
+                (a.getBlue() * b.getBlue()) / 255, (a.getAlpha() * b.getAlpha()) / 255));
+    }
+
+    /* Draws text at c, aligned by (ax, ay) of its size, in col and, if
+     * stroke is not null, outlined in stroke. Any color already set on
+     * g tints the text as it would a rendered text image. */
+    public void aprint(GOut g, Coord c, double ax, double ay, String text, Color col, Color stroke) {
+        Coord sz = size(text, stroke != null);
+        Coord ul = c.add((int) (sz.x * -ax), (int) (sz.y * -ay));
+        Color tint = g.getcolor();
+        GOut.Quads q = g.quads();
+        if (stroke != null) {
+            ul = ul.add(1, 0);
+            glyphs(q, ul, text, true);
+            g.chcolor(mul(tint, stroke));
+            q.flush();
+        }
+        glyphs(q, ul, text, false);
+        g.chcolor(mul(tint, col));
+        q.flush();
+        g.chcolor(tint);
+    }
+
+    public void aprint(GOut g, Coord c, double ax, double ay, String text) {
+        aprint(g, c, ax, ay, text, Color.WHITE, null);
+    }
+
+    /* Renders text from its glyphs to an image, as aprint would draw
+     * it without stroke, for comparison with Foundry.render. */
+    private synchronized BufferedImage render(String text) {
+        BufferedImage ret = TexI.mkbuf(size(text, false));
+        Graphics g = ret.getGraphics();
+        int x = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (i > 0)
+                x += kern(text.charAt(i - 1), ch);
+            Glyph gl = glyph(ch);
+            if (gl.adv > 0) {
+                if (gl.img == null)
+                    gl.img = gl.mkimg(false);
+                g.drawImage(gl.img, x - PAD, 0, null);
+            }
+            x += gl.adv;
+        }
+        g.dispose();
+        return (ret);
+    }
+
+    /* "bench" times the CPU side of drawing each string from glyphs,
+     * which is laying it out, against rendering it with
+     * Foundry.render. Neither the texture upload the latter needs nor
+     * the quads the former draws are included. "check" reports how
+     * much each string drawn from glyphs differs from its rendering
+     * by Foundry.render. */
+    public static void main(String[] args) throws Exception {
+        String cmd = args[0].intern();
+        PosixArgs opt = PosixArgs.getopt(args, 1, "af:s:n:");
+        boolean aa = false;
+        String font = Config.font;
+        int size = 10, n = 10000;
+        for (char c : opt.parsed()) {
+            if (c == 'a') {
+                aa = true;
+            } else if (c == 'f') {
+                font = opt.arg;
+            } else if (c == 's') {
+                size = Integer.parseInt(opt.arg);
+            } else if (c == 'n') {
+                n = Integer.parseInt(opt.arg);
+            }
+        }
+        Text.Foundry f = new Text.Foundry(new Font(font, Font.PLAIN, size)).aa(aa);
+        GlyphText gt = get(f);
+        String[] texts = (opt.rest.length > 0) ? opt.rest : new String[]{"12345", "Quality: 42", "1,234/5,678", "Stamina 97%"};
+        if (cmd == "bench") {
+            for (int r = 0; r < 10; r++) {
+                int sink = 0;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    for (String text : texts)
+                        sink += f.render(text).img.getWidth();
+                }
+                long t1 = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    for (String text : texts)
+                        sink += gt.size(text, false).x;
+                }
+                long t2 = System.nanoTime();
+                double k = (double) n * texts.length;
+                System.out.printf("render %.0f ns, glyphs %.0f ns per string (%d)\n", (t1 - t0) / k, (t2 - t1) / k, sink);
+            }
+        } else if (cmd == "check") {
+            for (String text : texts) {
+                BufferedImage a = f.render(text, Color.WHITE).img, b = gt.render(text);
+                int w = Math.min(a.getWidth(), b.getWidth()), h = Math.min(a.getHeight(), b.getHeight());
+                int ndiff = 0, maxdiff = 0;
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) {
+                        int d = Math.abs((a.getRGB(x, y) >>> 24) - (b.getRGB(x, y) >>> 24));
+                        if (d > 8)
+                            ndiff++;
+                        maxdiff = Math.max(maxdiff, d);
+                    }
+                }
+                System.out.printf("%s: width %d/%d, %d pixels differ, max alpha difference %d\n", text, a.getWidth(), b.getWidth(), ndiff, maxdiff);
+            }
+        }
+    }
+
+    static {
+        Console.setscmd("glyphtext", (cons, args) -> {
+            if (args.length >= 2)
+                Utils.setprefb("glyphtext", enabled = Utils.parsebool(args[1]));
+            else
+                cons.out.printf("glyph text %s\n", enabled ? "on" : "off");
+        });
+    }
+}
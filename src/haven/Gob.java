@@ -303,13 +303,23 @@ public class Gob implements Sprite.Owner, Skeleton.ModOwner, Rendered {
     public double a;
     public boolean virtual = false;
     int clprio = 0;
+    /* Bounding sphere radius for GobCuller, and the resource it was
+     * derived from. */
+    float cullrad = -1;
+    Resource cullres = null;
     public long id;
     public int frame;
     public final Glob glob;
     public int quality = 0;
     Map<Class<? extends GAttrib>, GAttrib> attr = new HashMap<Class<? extends GAttrib>, GAttrib>();
     private final Set<haven.sloth.gob.Rendered> renderedattrs = new HashSet<>();
-    public Collection<Overlay> ols = new LinkedList<Overlay>() {
+    public Collection<Overlay> ols = new OverlayList();
+
+    private class OverlayList extends LinkedList<Overlay> {
+        int mod() {
+            return (modCount);
+        }
+
         public boolean add(Overlay item) {
             /* XXX: Remove me once local code is changed to use addol(). */
             if (glob.oc.getgob(id) != null) {
@@ -319,7 +329,8 @@ public class Gob implements Sprite.Owner, Skeleton.ModOwner, Rendered {
             }
             return (super.add(item));
         }
-    };
+    }
+
     private List<Overlay> dols = new ArrayList<>();
     private List<Pair<GAttrib, Consumer<Gob>>> dattrs = new ArrayList<>();
 
@@ -902,84 +913,99 @@ public class Gob implements Sprite.Owner, Skeleton.ModOwner, Rendered {
     public void draw(GOut g) {
     }
 
-    public boolean setup(RenderList rl) {
-        loc.tick();
-        final Hidden hid = getattr(Hidden.class);
-        if (hid != null && Config.hideuniquegobs) {
-            if (Config.showoverlay) {
-                hid.setup(rl);
-            }
-        } else {
-            synchronized (ols) {
-                for (Overlay ol : ols)
-                    rl.add(ol, null);
-                for (Overlay ol : ols) {
-                    if (ol.spr instanceof Overlay.SetupMod)
-                        ((Overlay.SetupMod) ol.spr).setupmain(rl);
-                }
-            }
-
-            final GobHealth hlt = getattr(GobHealth.class);
-            if (hlt != null)
-                rl.prepc(hlt.getfx());
-
-            final GobQuality qlty = getattr(GobQuality.class);
-            if (qlty != null)
-                rl.prepc(qlty.getfx());
+    /* Status highlights (rack, cupboard, drying frame... states, marks
+     * and user highlights) only depend on the gob's sdt, its overlays,
+     * its resource and a handful of global settings, so they are
+     * computed when one of those changes rather than on every setup. */
+    private static int visgen = 0, visflags = 0, vismarked = 0, visovl = -1;
+    private static final GLState[] novis = {};
+    private GLState[] visfx = novis;
+    private int vgen = -1, volmod = -1;
+    /* The type is part of the key, since it is only known once the
+     * gob has been discovered, often after it was first set up. */
+    private Object vrd, vsdt, vres, vtype;
+
+    /* Called once per frame, before gobs are set up, to notice changes
+     * of the global inputs of visstate(). */
+    public static void visupdate() {
+        int flags = (Config.showrackstatus ? 1 : 0) | (Config.cRackmissing ? 2 : 0) |
+                (Config.showcupboardstatus ? 4 : 0) | (Config.showshedstatus ? 8 : 0) |
+                (Config.showdframestatus ? 16 : 0) | (Config.showcoopstatus ? 32 : 0) |
+                (Config.showhutchstatus ? 64 : 0) | (configuration.showtroughstatus ? 128 : 0) |
+                (Config.highlightpots ? 256 : 0);
+        int marked = MapView.markedgen;
+        int ovl = OverlayData.gen;
+        if ((flags != visflags) || (marked != vismarked) || (ovl != visovl)) {
+            visflags = flags;
+            vismarked = marked;
+            visovl = ovl;
+            visgen++;
+        }
+    }
 
+    private GLState[] visstate() {
+        ResDrawable rd = getattr(ResDrawable.class);
+        MessageBuf sdt = (rd == null) ? null : rd.sdt;
+        Resource res = getres();
+        int olmod = ((OverlayList) ols).mod();
+        if ((vgen == visgen) && (volmod == olmod) && (vrd == rd) && (vsdt == sdt) && (vres == res) && (vtype == type))
+            return (visfx);
+        List<GLState> st = new ArrayList<>();
+        boolean complete = true;
+        synchronized (ols) {
             if (Config.showrackstatus && type == Type.CHEESERACK) {
                 if (ols.size() == 3)
-                    rl.prepc(cRackFull);
+                    st.add(cRackFull);
                 if (ols.size() > 0 && ols.size() < 3 && Config.cRackmissing)
-                    rl.prepc(BPRadSprite.cRackMissing);
+                    st.add(BPRadSprite.cRackMissing);
                 else
-                    rl.prepc(cRackEmpty);
+                    st.add(cRackEmpty);
             }
-            if (Config.showcupboardstatus && type == Type.CUPBOARD) {
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+            if (Config.showcupboardstatus && type == Type.CUPBOARD && (sdt != null)) {
+                int stage = sdt.peekrbuf(0);
                 // BotUtils.sysLogAppend("Stage : "+stage,"white");
                 // BotUtils.sysLogAppend("Stage : "+stage,"white");
                 if (stage == 30 || stage == 29)
-                    rl.prepc(cupboardfull);
+                    st.add(cupboardfull);
                 if (stage == 1 || stage == 2)
-                    rl.prepc(cupboardempty);
+                    st.add(cupboardempty);
                 //if(ols.size()>0)
-                //  rl.prepc(cupboardfull);
+                //  st.add(cupboardfull);
             }
-            if (Config.showshedstatus && type == Type.SHED) {
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+            if (Config.showshedstatus && type == Type.SHED && (sdt != null)) {
+                int stage = sdt.peekrbuf(0);
 
                 if (stage == 30 || stage == 29)
-                    rl.prepc(cupboardfull);
+                    st.add(cupboardfull);
                 if (stage == 1 || stage == 2)
-                    rl.prepc(cupboardempty);
+                    st.add(cupboardempty);
                 //while open : empty == 1, 1 item to half items = 5, half full = 13, full 29
                 //while closed : empty = 2, 1 item to half items = 6, half full= 14, full 30
             }
 
             if (MapView.markedGobs.contains(id))
-                rl.prepc(MapView.markedFx);
+                st.add(MapView.markedFx);
 
-            if (Config.showdframestatus && type == Type.TANTUB) {
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+            if (Config.showdframestatus && type == Type.TANTUB && (sdt != null)) {
+                int stage = sdt.peekrbuf(0);
                 // BotUtils.sysLogAppend("Sprite num : "+stage,"white");
                 if (stage == 2)
-                    rl.prepc(dframeEmpty);
+                    st.add(dframeEmpty);
                 if (stage == 10 || stage == 9 || stage == 8)
-                    rl.prepc(dframeDone);
+                    st.add(dframeDone);
                 if (stage == 0 || stage == 1 || stage == 4 || stage == 5)
-                    rl.prepc(dframeWater);
+                    st.add(dframeWater);
             }
-            if (Config.showcoopstatus && type == Type.COOP) {
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+            if (Config.showcoopstatus && type == Type.COOP && (sdt != null)) {
+                int stage = sdt.peekrbuf(0);
                 if (stage == 0)
-                    rl.prepc(cRackFull);
+                    st.add(cRackFull);
                 if (stage == 1)
-                    rl.prepc(coopMissing);
+                    st.add(coopMissing);
                 if (stage == 2)
-                    rl.prepc(dframeWater);
+                    st.add(dframeWater);
             }
-            if (Config.showhutchstatus && type == Type.HUTCH) {
+            if (Config.showhutchstatus && type == Type.HUTCH && (sdt != null)) {
           /*  no rabbits -stage 2 = no food or water
             stage 1  = no food or water doors open
             stage 6  = water no food
@@ -1007,27 +1033,26 @@ public class Gob implements Sprite.Owner, Skeleton.ModOwner, Rendered {
             stage -63 no food no water doors open
             stage -58 no food water doors closed
             stage -59 no food water doors open*/
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+                int stage = sdt.peekrbuf(0);
                 if (stage == 2 || stage == 1 || stage == -62 || stage == -63 || stage == 66 || stage == 65)
-                    rl.prepc(cRackFull);
+                    st.add(cRackFull);
                 if (stage == 6 || stage == 5 || stage == -58 || stage == -59 || stage == 69 || stage == 70 || stage == -51 || stage == -50)
-                    rl.prepc(coopMissing);
+                    st.add(coopMissing);
                 if (stage == -38 || stage == 58 || stage == 57 || stage == -6 || stage == -7 || stage == 122 || stage == 121)
-                    rl.prepc(dframeWater);
+                    st.add(dframeWater);
             }
 
-            if (configuration.showtroughstatus && type == Type.TROUGH) {
-                int stage = getattr(ResDrawable.class).sdt.peekrbuf(0);
+            if (configuration.showtroughstatus && type == Type.TROUGH && (sdt != null)) {
+                int stage = sdt.peekrbuf(0);
 
                 if (stage == 1)
-                    rl.prepc(coopMissing);
+                    st.add(coopMissing);
                 if (stage == 0)
-                    rl.prepc(cRackFull);
+                    st.add(cRackFull);
             }
 
-            if (OverlayData.isHighlighted(name())) {
-                rl.prepc(new Material.Colors(OverlayData.get(name()).highlightColor));
-            }
+            if (OverlayData.isHighlighted(name()))
+                st.add(new Material.Colors(OverlayData.get(name()).highlightColor));
 
             if (Config.showdframestatus && type == Type.DFRAME) {
                 boolean done = true;
@@ -1046,17 +1071,60 @@ public class Gob implements Sprite.Owner, Skeleton.ModOwner, Rendered {
                             }
                         }
                     } catch (Loading l) {
+                        complete = false;
                     }
                 }
                 if (done && !empty && type != Type.TANTUB)
-                    rl.prepc(dframeDone);
+                    st.add(dframeDone);
                 else if (empty && type != Type.TANTUB)
-                    rl.prepc(dframeEmpty);
+                    st.add(dframeEmpty);
             }
 
 
             if (Config.highlightpots && type == Type.GARDENPOT && ols.size() == 2)
-                rl.prepc(potDOne);
+                st.add(potDOne);
+        }
+        visfx = st.toArray(novis);
+        if (complete) {
+            vgen = visgen;
+            volmod = olmod;
+            vrd = rd;
+            vsdt = sdt;
+            vres = res;
+            vtype = type;
+        } else {
+            vgen = -1;
+        }
+        return (visfx);
+    }
+
+    public boolean setup(RenderList rl) {
+        loc.tick();
+        final Hidden hid = getattr(Hidden.class);
+        if (hid != null && Config.hideuniquegobs) {
+            if (Config.showoverlay) {
+                hid.setup(rl);
+            }
+        } else {
+            synchronized (ols) {
+                for (Overlay ol : ols)
+                    rl.add(ol, null);
+                for (Overlay ol : ols) {
+                    if (ol.spr instanceof Overlay.SetupMod)
+                        ((Overlay.SetupMod) ol.spr).setupmain(rl);
+                }
+            }
+
+            final GobHealth hlt = getattr(GobHealth.class);
+            if (hlt != null)
+                rl.prepc(hlt.getfx());
+
+            final GobQuality qlty = getattr(GobQuality.class);
+            if (qlty != null)
+                rl.prepc(qlty.getfx());
+
+            for (GLState st : visstate())
+                rl.prepc(st);
 
 
             for (final haven.sloth.gob.Rendered attr : renderedattrs) {
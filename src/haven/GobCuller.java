@@ -0,0 +1,165 @@
+package haven;
+
+import haven.sloth.gob.Type;
+
+/* Per-frame visibility test for gobs against the camera frustum and
+ * an optional draw distance. MapView.Gobs buckets static gobs into
+ * grid cells of CELL units and tests each cell's bounding box before
+ * setting any of its gobs up; dynamic gobs are tested one by one
+ * against their bounding spheres. All coordinates taken here are
+ * world coordinates (i.e. with y not yet flipped for GL). When
+ * shadows are on, the frustum is extended away from the light by
+ * SHADOWLEN, so that gobs just off-screen still cast their shadows
+ * onto it. */
+public class GobCuller {
+    public static boolean enabled = Utils.getprefb("gobcull", true);
+    /* Maximum horizontal distance from the view center, in world
+     * units, at which gobs are still set up; 0 for no limit. */
+    public static int drawdist = Utils.getprefi("gobdrawdist", 0);
+    public static final float CELL = 110;
+    /* Generous radii, since culling a visible gob is far worse than
+     * drawing an invisible one. */
+    static final float DEFRAD = 25, TREERAD = 100;
+    /* The longest shadow accounted for, in world units; the shadow
+     * map does not reach further than this from the view center
+     * anyway. */
+    public static final float SHADOWLEN = 1500;
+    private final float[][] planes = new float[6][4];
+    /* How far each plane is pushed out towards the light. */
+    private final float[] sweep = new float[6];
+    private boolean frustum;
+    private float fx, fy;
+    private boolean focus;
+    private int ndrawn, nculled;
+    private boolean counting;
+    /* Counts for the last complete counted frame. */
+    public int drawn, culled;
+    private static GobCuller last = null;
+
+    /* Prepares the planes for a frame from the camera's projection
+     * and view matrices, the view center for distance culling (which
+     * may be null if not known), and the direction light travels in,
+     * in GL coordinates, if shadows are drawn (null otherwise). Only
+     * frames with count set are counted. */
+    public void frame(Matrix4f proj, Matrix4f view, Coord3f cc, Coord3f ldir, boolean count) {
+        if (counting = count) {
+            drawn = ndrawn;
+            culled = nculled;
+            ndrawn = nculled = 0;
+            last = this;
+        }
+        frustum = enabled;
+        if (frustum) {
+            float[] m = proj.mul(view).m;
+            for (int i = 0; i < 3; i++) {
+                for (int o = 0; o < 4; o++) {
+                    planes[i * 2][o] = m[(o * 4) + 3] + m[(o * 4) + i];
+                    planes[(i * 2) + 1][o] = m[(o * 4) + 3] - m[(o * 4) + i];
+                }
+            }
+            for (int i = 0; i < planes.length; i++) {
+                float[] p = planes[i];
+                float l = (float) Math.sqrt((p[0] * p[0]) + (p[1] * p[1]) + (p[2] * p[2]));
+                if (l > 0) {
+                    p[0] /= l;
+                    p[1] /= l;
+                    p[2] /= l;
+                    p[3] /= l;
+                }
+                /* A caster's shadow reaches the plane's inner side if
+                 * any point up to SHADOWLEN along the light does. */
+                if (ldir != null)
+                    sweep[i] = Math.max(0, SHADOWLEN * ((p[0] * ldir.x) + (p[1] * ldir.y) + (p[2] * ldir.z)));
+                else
+                    sweep[i] = 0;
+            }
+        }
+        if (focus = (enabled && (drawdist > 0) && (cc != null))) {
+            fx = cc.x;
+            fy = cc.y;
+        }
+    }
+
+    public boolean sphere(float x, float y, float z, float r) {
+        if (focus) {
+            float dx = x - fx, dy = y - fy, d = drawdist + r;
+            if (((dx * dx) + (dy * dy)) > (d * d))
+                return (false);
+        }
+        if (frustum) {
+            for (int i = 0; i < planes.length; i++) {
+                float[] p = planes[i];
+                if (((p[0] * x) - (p[1] * y) + (p[2] * z) + p[3]) < -r - sweep[i])
+                    return (false);
+            }
+        }
+        return (true);
+    }
+
+    public boolean box(float x1, float y1, float z1, float x2, float y2, float z2) {
+        if (focus) {
+            float dx = Math.max(0, Math.max(x1 - fx, fx - x2)), dy = Math.max(0, Math.max(y1 - fy, fy - y2));
+            if (((dx * dx) + (dy * dy)) > ((float) drawdist * drawdist))
+                return (false);
+        }
+        if (frustum) {
+            for (int i = 0; i < planes.length; i++) {
+                float[] p = planes[i];
+                /* Test the corner furthest along the plane normal; the
+                 * world y axis is flipped in GL space. */
+                float x = (p[0] >= 0) ? x2 : x1;
+                float y = (p[1] >= 0) ? y1 : y2;
+                float z = (p[2] >= 0) ? z2 : z1;
+                if (((p[0] * x) - (p[1] * y) + (p[2] * z) + p[3]) < -sweep[i])
+                    return (false);
+            }
+        }
+        return (true);
+    }
+
+    public boolean visible(Gob gob) {
+        Coord3f c;
+        try {
+            c = gob.getc();
+        } catch (Loading l) {
+            return (true);
+        }
+        float r = radius(gob);
+        return (sphere(c.x, c.y, Config.disableelev ? 0 : c.z, r));
+    }
+
+    public void count(int drawn, int culled) {
+        if (!counting)
+            return;
+        ndrawn += drawn;
+        nculled += culled;
+    }
+
+    public static float radius(Gob gob) {
+        Resource res = gob.getres();
+        if ((gob.cullrad > 0) && (gob.cullres == res))
+            return (gob.cullrad);
+        float r = (gob.type == Type.TREE) ? TREERAD : DEFRAD;
+        GobHitbox.BBox bb = GobHitbox.getBBox(gob);
+        if (bb != null)
+            r = Math.max(r, (float) Math.max(bb.a.abs(), bb.b.abs()) * 1.5f);
+        gob.cullres = res;
+        return (gob.cullrad = r);
+    }
+
+    static {
+        Console.setscmd("gobcull", (cons, args) -> {
+            if (args.length >= 2) {
+                if (args[1].equals("dist") && (args.length >= 3))
+                    Utils.setprefi("gobdrawdist", drawdist = Integer.parseInt(args[2]));
+                else
+                    Utils.setprefb("gobcull", enabled = Utils.parsebool(args[1]));
+            } else {
+                GobCuller c = last;
+                cons.out.printf("culling %s, draw distance %s\n", enabled ? "on" : "off", (drawdist > 0) ? Integer.toString(drawdist) : "unlimited");
+                if (c != null)
+                    cons.out.printf("last frame: %,d drawn, %,d culled\n", c.drawn, c.culled);
+            }
+        });
+    }
+}
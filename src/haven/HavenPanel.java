@@ -56,6 +56,7 @@ import java.awt.event.MouseWheelListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -137,7 +138,7 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
                     File outputfile = new File(String.format("screenshots/%s.png", curtimestamp));
                     outputfile.getParentFile().mkdirs();
                     Screenshot.writeToFile(outputfile, width, height);
-                    ui.root.findchild(GameUI.class).msg(String.format("Screenshot has been saved as \"%s\"", outputfile.getName()), Color.WHITE);
+                    ui.first(GameUI.class).msg(String.format("Screenshot has been saved as \"%s\"", outputfile.getName()), Color.WHITE);
                 } catch (Exception ex) {
                     System.out.println("Unable to take screenshot: " + ex.getMessage());
                 }
@@ -457,14 +458,15 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Tex-current: %d", TexGL.num());
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "GL progs: %d", g.st.numprogs());
             FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Stats slots: %d", GLState.Slot.num());
-            GameUI gi = ui.root.findchild(GameUI.class);
+            FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Widget cache: %d redrawn, %d blitted", WidgetCache.redrawn, WidgetCache.blitted);
+            GameUI gi = ui.first(GameUI.class);
             if ((gi != null) && (gi.map != null)) {
                 try {
                     FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Mapview: %s", gi.map);
                 } catch (Loading e) {
                 }
                 if (gi.map.rls != null)
-                    FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Rendered: %,d+%,d(%,d), cached %,d/%,d+%,d(%,d)", gi.map.rls.drawn, gi.map.rls.instanced, gi.map.rls.instancified, gi.map.rls.cacheroots, gi.map.rls.cached, gi.map.rls.cacheinst, gi.map.rls.cacheinstn);
+                    FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "Rendered: %,d+%,d(%,d, %,d shared), cached %,d/%,d+%,d(%,d)", gi.map.rls.drawn, gi.map.rls.instanced, gi.map.rls.instancified, gi.map.rls.xbatches, gi.map.rls.cacheroots, gi.map.rls.cached, gi.map.rls.cacheinst, gi.map.rls.cacheinstn);
             }
             if (Resource.remote().qdepth() > 0)
                 FastText.aprintf(g, new Coord(10, y -= 15), 0, 1, "RQ depth: %d (%d)", Resource.remote().qdepth(), Resource.remote().numloaded());
@@ -569,6 +571,7 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
         CurrentGL on;
         CPUProfile.Frame pf;
         long doneat;
+        volatile boolean ran;
 
         Frame(BufferBGL buf, CurrentGL on) {
             this.buf = buf;
@@ -596,6 +599,7 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
             if (f.pf != null)
                 f.pf.tick("awt");
             f.buf.run(gl);
+            f.ran = true;
             GOut.checkerr(gl);
             if (f.pf != null)
                 f.pf.tick("gl");
@@ -649,6 +653,30 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
         }
     }
 
+    /* Command buffers are recycled between frames rather than
+     * allocated anew: one can be recorded by the main thread while
+     * one waits in bufdraw and one is replayed by the render thread,
+     * so at most NBUFS are ever in use. Both threads keep histograms
+     * of how long they were blocked on the other. */
+    private static final int NBUFS = 3;
+    private final ArrayDeque<BufferBGL> freebufs = new ArrayDeque<BufferBGL>(NBUFS);
+    public final Histogram mainblocked = new Histogram(), renderblocked = new Histogram();
+
+    private BufferBGL getbuf() {
+        synchronized (freebufs) {
+            BufferBGL ret = freebufs.poll();
+            return ((ret == null) ? new BufferBGL() : ret);
+        }
+    }
+
+    private void recycle(BufferBGL buf) {
+        buf.clear();
+        synchronized (freebufs) {
+            if (freebufs.size() < NBUFS)
+                freebufs.push(buf);
+        }
+    }
+
     private Frame bufdraw = null;
     private final Runnable drawfun = new Runnable() {
         private void uglyjoglhack() throws InterruptedException {
@@ -676,10 +704,12 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
                     int waited = 0;
                     Frame current;
                     synchronized (drawfun) {
+                        long wst = System.nanoTime();
                         while ((current = bufdraw) == null)
                             drawfun.wait();
                         bufdraw = null;
                         drawfun.notifyAll();
+                        renderblocked.add(System.nanoTime() - wst);
                         waited += System.currentTimeMillis() - then;
                     }
                     CPUProfile.Frame curf = null;
@@ -696,6 +726,15 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
                     long now = System.currentTimeMillis();
                     waited += now - current.doneat;
                     ridle = (ridle * 0.95) + (((double) waited / ((double) (now - then))) * 0.05);
+                    /* Only reuse the buffer once it is certain that no
+                     * redraw is still replaying it. */
+                    boolean taken;
+                    synchronized (curdraw) {
+                        if (!(taken = (curdraw[0] != current)))
+                            curdraw[0] = null;
+                    }
+                    if (!taken || current.ran)
+                        recycle(current.buf);
                     current = null; /* Just for the GC. */
                 }
             } catch (InterruptedException e) {
@@ -739,17 +778,19 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
                             if (curf != null)
                                 curf.tick("dsp");
 
-                            BufferBGL buf = new BufferBGL();
+                            BufferBGL buf = getbuf();
                             GLState.Applier state = this.state;
                             rootdraw(state, ui, buf);
                             if (curf != null)
                                 curf.tick("draw");
                             synchronized (drawfun) {
                                 now = System.currentTimeMillis();
+                                long wst = System.nanoTime();
                                 while (bufdraw != null)
                                     drawfun.wait();
                                 bufdraw = new Frame(buf, state.cgl);
                                 drawfun.notifyAll();
+                                mainblocked.add(System.nanoTime() - wst);
                                 fwaited += System.currentTimeMillis() - now;
                             }
 
@@ -870,6 +911,15 @@ public class HavenPanel extends GLCanvas implements Runnable, Console.Directory,
         cmdmap.put("vsync", (cons, args) -> {
             iswap = Utils.parsebool(args[1]);
         });
+        cmdmap.put("drawstats", (cons, args) -> {
+            if ((args.length >= 2) && args[1].equals("reset")) {
+                mainblocked.reset();
+                renderblocked.reset();
+            } else {
+                cons.out.println("main thread blocked on render (ms):   " + mainblocked.summary(1e6));
+                cons.out.println("render thread blocked on main (ms):   " + renderblocked.summary(1e6));
+            }
+        });
     }
 
     public Map<String, Console.Command> findcmds() {
@@ -0,0 +1,131 @@
+package haven;
+
+import java.io.PrintWriter;
+
+/* Log-linear histogram in the spirit of HdrHistogram: every power-of-two
+ * range is split into 2^sbits linear sub-buckets, giving a fixed relative
+ * error (~3% with the default of five bits) over the whole long range
+ * without any allocation when recording. */
+public class Histogram {
+    private final int sbits, sn;
+    private final long[] counts;
+    private long n, sum, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+
+    public Histogram(int sbits) {
+        this.sbits = sbits;
+        this.sn = 1 << sbits;
+        this.counts = new long[sn + ((64 - sbits) * sn)];
+    }
+
+    public Histogram() {
+        this(5);
+    }
+
+    private int bucket(long v) {
+        if (v < sn)
+            return ((int) v);
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sh = e - sbits;
+        return (sn + (sh * sn) + (int) ((v >>> sh) - sn));
+    }
+
+    private long lower(int b) {
+        if (b < sn)
+            return (b);
+        int sh = (b - sn) / sn;
+        long m = ((b - sn) % sn) + sn;
+        return (m << sh);
+    }
+
+    private long upper(int b) {
+        if (b < sn)
+            return (b);
+        int sh = (b - sn) / sn;
+        long m = ((b - sn) % sn) + sn;
+        return (((m + 1) << sh) - 1);
+    }
+
+    public synchronized void add(long v) {
+        if (v < 0)
+            v = 0;
+        counts[bucket(v)]++;
+        n++;
+        sum += v;
+        if (v < min)
+            min = v;
+        if (v > max)
+            max = v;
+    }
+
+    public synchronized void add(Histogram h) {
+        long[] oc;
+        long on, osum, omin, omax;
+        synchronized (h) {
+            oc = h.counts.clone();
+            on = h.n;
+            osum = h.sum;
+            omin = h.min;
+            omax = h.max;
+        }
+        for (int i = 0; i < Math.min(oc.length, counts.length); i++)
+            counts[i] += oc[i];
+        n += on;
+        sum += osum;
+        min = Math.min(min, omin);
+        max = Math.max(max, omax);
+    }
+
+    public synchronized long count() {
+        return (n);
+    }
+
+    public synchronized long max() {
+        return ((n == 0) ? 0 : max);
+    }
+
+    public synchronized long min() {
+        return ((n == 0) ? 0 : min);
+    }
+
+    public synchronized double mean() {
+        return ((n == 0) ? 0 : ((double) sum / n));
+    }
+
+    /* Returns the upper bound of the bucket containing the q-quantile,
+     * clamped to the recorded extremes. */
+    public synchronized long quantile(double q) {
+        if (n == 0)
+            return (0);
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long acc = 0;
+        for (int i = 0; i < counts.length; i++) {
+            acc += counts[i];
+            if (acc >= rank)
+                return (Math.max(min, Math.min(upper(i), max)));
+        }
+        return (max);
+    }
+
+    public synchronized void reset() {
+        java.util.Arrays.fill(counts, 0);
+        n = sum = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    /* Prints a one-line summary, with values divided by unit (e.g. 1e6 to
+     * print nanosecond samples as milliseconds). */
+    public synchronized String summary(double unit) {
+        return (String.format("n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f",
+                n, mean() / unit, quantile(0.5) / unit, quantile(0.9) / unit, quantile(0.99) / unit, max() / unit));
+    }
+
+    /* Dumps every non-empty bucket as "lower upper count" lines,
+     * suitable for offline plotting. */
+    public synchronized void dump(PrintWriter out, double unit) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0)
+                out.printf("%.3f\t%.3f\t%d\n", lower(i) / unit, upper(i) / unit, counts[i]);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package haven;
+
+import javax.media.opengl.GL;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/* Shared texture pages for small UI images (item sprites, menu and
+ * belt icons, buff icons), so that a grid full of icons binds one
+ * texture instead of one per icon and can be drawn as one batch with
+ * GOut.Quads. Images are packed into shelves on a few fixed-size pages
+ * as they are first drawn; when every page is full, the least recently
+ * drawn page is cleared and refilled on demand. Images too large for
+ * the atlas, or that cannot be placed without evicting a page that is
+ * still in use, are simply not handled, and callers draw them from
+ * their own textures as before.
+ *
+ * Changed pages are uploaded once per frame, from frame(), and a newly
+ * packed image is only drawn from its page once the page has been
+ * uploaded with it; until then, callers draw it as if it were not
+ * handled. Besides the shared icon atlas, other users (such as
+ * GlyphText) may keep atlases of their own. */
+public class IconAtlas {
+    public static boolean enabled = Utils.getprefb("iconatlas", true);
+    public static final int PAGESZ = 512, MAXSZ = 64, MAXPAGES = 4;
+    /* Pages drawn from more recently than this, in seconds, are never
+     * evicted, lest two sets of icons keep evicting each other. */
+    private static final double MINAGE = 1.0;
+    private static final int MARGIN = 1;
+    private static final List<IconAtlas> atlases = new ArrayList<>();
+    public static final IconAtlas icons = new IconAtlas("icons", MAXPAGES);
+    public final String name;
+    private final int maxpages;
+    private final List<Page> pages = new ArrayList<>();
+    private final Map<Object, Region> regions = new WeakHashMap<>();
+    public int evictions = 0;
+
+    public IconAtlas(String name, int maxpages) {
+        this.name = name;
+        this.maxpages = maxpages;
+        synchronized (atlases) {
+            atlases.add(this);
+        }
+    }
+
+    public static class Region {
+        public final Coord sz;
+        public final float tx1, ty1, tx2, ty2;
+        private final Page page;
+        private final int gen, ver;
+
+        private Region(Page page, Coord ul, Coord sz) {
+            this.page = page;
+            this.gen = page.gen;
+            this.ver = page.ver;
+            this.sz = sz;
+            tx1 = ul.x / (float) PAGESZ;
+            ty1 = ul.y / (float) PAGESZ;
+            tx2 = (ul.x + sz.x) / (float) PAGESZ;
+            ty2 = (ul.y + sz.y) / (float) PAGESZ;
+        }
+
+        public Tex tex() {
+            page.lastuse = Utils.rtime();
+            return (page.tex());
+        }
+
+        boolean valid() {
+            return (page.gen == gen);
+        }
+
+        boolean ready() {
+            return (page.upver >= ver);
+        }
+    }
+
+    private static class Shelf {
+        final int y, h;
+        int x = 0;
+
+        Shelf(int y, int h) {
+            this.y = y;
+            this.h = h;
+        }
+    }
+
+    private class Page {
+        BufferedImage back = TexI.mkbuf(new Coord(PAGESZ, PAGESZ));
+        final List<Shelf> shelves = new ArrayList<>();
+        int top = 0, gen = 0;
+        /* The version of the page's contents, and the version last
+         * uploaded to its texture. */
+        int ver = 0, upver = -1;
+        double lastuse = Utils.rtime();
+        private PageTex tex = null;
+
+        /* The page's one texture, refilled from the page whenever
+         * frame() finds the two differing. Binding it to a free unit
+         * creates it and fills it in on first use. */
+        private class PageTex extends TexGL {
+            PageTex() {
+                super(new Coord(PAGESZ, PAGESZ));
+            }
+
+            protected void fill(GOut g) {
+                g.gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA, PAGESZ, PAGESZ, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, pixels());
+            }
+
+            void update(GOut g) {
+                GLState.TexUnit s = lbind(g, this);
+                if (upver != ver)
+                    g.gl.glTexSubImage2D(GL.GL_TEXTURE_2D, 0, 0, 0, PAGESZ, PAGESZ, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, pixels());
+                s.ufree(g);
+            }
+        }
+
+        private ByteBuffer pixels() {
+            synchronized (IconAtlas.this) {
+                upver = ver;
+                return (ByteBuffer.wrap(Utils.splice(((DataBufferByte) back.getRaster().getDataBuffer()).getData(), 0)));
+            }
+        }
+
+        /* Finds room for an image of size sz, preferring the shelf that
+         * wastes the least height. */
+        Coord alloc(Coord sz) {
+            int w = sz.x + MARGIN, h = sz.y + MARGIN;
+            Shelf best = null;
+            for (Shelf s : shelves) {
+                if ((s.h >= h) && (s.x + w <= PAGESZ) && ((best == null) || (s.h < best.h)))
+                    best = s;
+            }
+            if ((best == null) || (best.h > h * 2)) {
+                if (top + h <= PAGESZ) {
+                    shelves.add(best = new Shelf(top, h));
+                    top += h;
+                } else if (best == null) {
+                    return (null);
+                }
+            }
+            Coord ret = new Coord(best.x, best.y);
+            best.x += w;
+            return (ret);
+        }
+
+        void put(BufferedImage img, Coord ul) {
+            Graphics g = back.getGraphics();
+            g.drawImage(img, ul.x, ul.y, null);
+            g.dispose();
+            ver++;
+        }
+
+        void clear() {
+            back = TexI.mkbuf(new Coord(PAGESZ, PAGESZ));
+            shelves.clear();
+            top = 0;
+            gen++;
+            ver++;
+        }
+
+        Tex tex() {
+            if (tex == null)
+                tex = new PageTex();
+            return (tex);
+        }
+    }
+
+    /* Returns the region for img, keyed on key, packing it on first
+     * use. Returns null if img is not handled by the atlas, or not
+     * yet uploaded with its page. */
+    public synchronized Region region(Object key, BufferedImage img) {
+        if (!enabled || (img == null))
+            return (null);
+        Region r = regions.get(key);
+        if (r != null) {
+            if (r.valid())
+                return (r.ready() ? r : null);
+            regions.remove(key);
+        }
+        Coord sz = Utils.imgsz(img);
+        if ((sz.x > MAXSZ) || (sz.y > MAXSZ) || (sz.x == 0) || (sz.y == 0))
+            return (null);
+        Page pg = null;
+        Coord ul = null;
+        for (Page p : pages) {
+            if ((ul = p.alloc(sz)) != null) {
+                pg = p;
+                break;
+            }
+        }
+        if (pg == null) {
+            if (pages.size() < maxpages) {
+                pages.add(pg = new Page());
+            } else {
+                pg = evict();
+                if (pg == null)
+                    return (null);
+            }
+            ul = pg.alloc(sz);
+        }
+        pg.put(img, ul);
+        regions.put(key, new Region(pg, ul, sz));
+        return (null);
+    }
+
+    private Page evict() {
+        Page lru = null;
+        for (Page p : pages) {
+            if ((lru == null) || (p.lastuse < lru.lastuse))
+                lru = p;
+        }
+        if ((lru == null) || ((Utils.rtime() - lru.lastuse) < MINAGE))
+            return (null);
+        for (Iterator<Region> i = regions.values().iterator(); i.hasNext(); ) {
+            if (i.next().page == lru)
+                i.remove();
+        }
+        lru.clear();
+        evictions++;
+        return (lru);
+    }
+
+    /* Uploads the pages changed since the last frame. */
+    private void upload(GOut g) {
+        List<Page> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (Page p : pages) {
+                if (p.upver != p.ver)
+                    dirty.add(p);
+            }
+        }
+        for (Page p : dirty)
+            ((Page.PageTex) p.tex()).update(g);
+    }
+
+    public synchronized void clear() {
+        for (Page p : pages) {
+            if (p.tex != null)
+                p.tex.dispose();
+        }
+        pages.clear();
+        regions.clear();
+    }
+
+    public static void frame(GOut g) {
+        synchronized (atlases) {
+            for (IconAtlas a : atlases)
+                a.upload(g);
+        }
+    }
+
+    public static Region get(Object key, BufferedImage img) {
+        return (icons.region(key, img));
+    }
+
+    public static Region get(Resource.Image img) {
+        return (get(img, img.img));
+    }
+
+    /* Only immutable, image-backed textures can be packed. */
+    public static Region get(Tex tex) {
+        if (!(tex instanceof TexI) || ((TexI) tex).mutable)
+            return (null);
+        return (get(tex, ((TexI) tex).back));
+    }
+
+    public static void reset() {
+        synchronized (atlases) {
+            for (IconAtlas a : atlases)
+                a.clear();
+        }
+    }
+
+    static {
+        Console.setscmd("iconatlas", (cons, args) -> {
+            if (args.length >= 2) {
+                if (args[1].equals("reset"))
+                    reset();
+                else
+                    Utils.setprefb("iconatlas", enabled = Utils.parsebool(args[1]));
+            } else {
+                cons.out.printf("atlas %s\n", enabled ? "on" : "off");
+                synchronized (atlases) {
+                    for (IconAtlas a : atlases) {
+                        synchronized (a) {
+                            cons.out.printf("%s: %d pages, %d images, %d evictions\n", a.name, a.pages.size(), a.regions.size(), a.evictions);
+                        }
+                    }
+                }
+            }
+        });
+    }
+}
@@ -34,8 +34,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Inventory extends Widget implements DTarget {
     public static final Tex invsq = Resource.loadtex("gfx/hud/invsq");
@@ -63,6 +66,229 @@ public class Inventory extends Widget implements DTarget {
 
     public boolean locked = false;
     public Map<GItem, WItem> wmap = new HashMap<GItem, WItem>();
+    private final Model model = new Model();
+
+    /* Index of the items in the inventory, kept up to date as items
+     * are added, removed, resized and get new infos, so that the
+     * queries below, which scripts tend to call in loops, need neither
+     * walk the children nor look names up through the item infos on
+     * every call. Names and resource names load asynchronously, so
+     * they are resolved when first queried and retried until known. */
+    private static class Entry {
+        final WItem w;
+        final long seq;
+        String name = null, res = null;
+        int x, y, sw, sh, area;
+
+        Entry(WItem w, long seq) {
+            this.w = w;
+            this.seq = seq;
+        }
+    }
+
+    private class Model {
+        final Map<WItem, Entry> items = new LinkedHashMap<>();
+        final Map<String, List<Entry>> byname = new HashMap<>(), byres = new HashMap<>();
+        final Set<Entry> unresolved = new LinkedHashSet<>();
+        Entry[] grid = new Entry[0];
+        int gw, gh, area;
+        long seq = 0;
+
+        synchronized void add(WItem w) {
+            Entry e = new Entry(w, seq++);
+            items.put(w, e);
+            unresolved.add(e);
+            place(e);
+        }
+
+        synchronized void remove(WItem w) {
+            Entry e = items.remove(w);
+            if (e != null) {
+                unplace(e);
+                unindex(e);
+                unresolved.remove(e);
+            }
+        }
+
+        synchronized void changed(WItem w) {
+            Entry e = items.get(w);
+            if (e != null) {
+                unplace(e);
+                place(e);
+            }
+        }
+
+        synchronized void renamed(WItem w) {
+            Entry e = items.get(w);
+            if (e != null) {
+                unindex(e);
+                unresolved.add(e);
+            }
+        }
+
+        synchronized void resize(Coord isz) {
+            grid = new Entry[isz.x * isz.y];
+            gw = isz.x;
+            gh = isz.y;
+            for (Entry e : items.values())
+                mark(e, e);
+        }
+
+        private void place(Entry e) {
+            Coord c = e.w.c.div(sqsz), sz = e.w.sz.div(sqsz);
+            e.x = c.x;
+            e.y = c.y;
+            e.sw = sz.x;
+            e.sh = sz.y;
+            e.area = (e.w.sz.x * e.w.sz.y) / (sqsz.x * sqsz.y);
+            area += e.area;
+            mark(e, e);
+        }
+
+        private void unplace(Entry e) {
+            mark(e, null);
+            area -= e.area;
+        }
+
+        private void mark(Entry e, Entry to) {
+            for (int y = Math.max(e.y, 0); (y < e.y + e.sh) && (y < gh); y++) {
+                for (int x = Math.max(e.x, 0); (x < e.x + e.sw) && (x < gw); x++) {
+                    if ((to != null) || (grid[x + (y * gw)] == e))
+                        grid[x + (y * gw)] = to;
+                }
+            }
+        }
+
+        private void index(Map<String, List<Entry>> idx, String key, Entry e) {
+            idx.computeIfAbsent(key, k -> new ArrayList<>()).add(e);
+        }
+
+        private void unindex(Map<String, List<Entry>> idx, String key, Entry e) {
+            List<Entry> l = idx.get(key);
+            if (l != null) {
+                l.remove(e);
+                if (l.isEmpty())
+                    idx.remove(key);
+            }
+        }
+
+        private void unindex(Entry e) {
+            if (e.name != null) {
+                unindex(byname, e.name, e);
+                e.name = null;
+            }
+            if (e.res != null) {
+                unindex(byres, e.res, e);
+                e.res = null;
+            }
+        }
+
+        void resolve() {
+            for (java.util.Iterator<Entry> i = unresolved.iterator(); i.hasNext(); ) {
+                Entry e = i.next();
+                if (e.res == null) {
+                    try {
+                        Resource res = e.w.item.resource();
+                        if (res != null)
+                            index(byres, e.res = res.name, e);
+                    } catch (Loading l) {
+                    }
+                }
+                if (e.name == null) {
+                    String name = e.w.item.getname();
+                    if (!name.isEmpty())
+                        index(byname, e.name = name, e);
+                }
+                if ((e.name != null) && (e.res != null))
+                    i.remove();
+            }
+        }
+
+        /* Items with names containing any of names, in inventory order. */
+        synchronized List<WItem> partial(int max, String... names) {
+            resolve();
+            List<Entry> found = new ArrayList<>();
+            for (String name : names) {
+                if (name.isEmpty()) {
+                    /* Matches unnamed items too, as an empty name would. */
+                    found = new ArrayList<>(items.values());
+                    break;
+                }
+            }
+            if (found.isEmpty()) {
+                for (Map.Entry<String, List<Entry>> b : byname.entrySet()) {
+                    for (String name : names) {
+                        if (b.getKey().contains(name)) {
+                            found.addAll(b.getValue());
+                            break;
+                        }
+                    }
+                }
+            }
+            return (sorted(found, max));
+        }
+
+        synchronized int count(String name) {
+            if (name.isEmpty())
+                return (items.size());
+            resolve();
+            int ret = 0;
+            for (Map.Entry<String, List<Entry>> b : byname.entrySet()) {
+                if (b.getKey().contains(name))
+                    ret += b.getValue().size();
+            }
+            return (ret);
+        }
+
+        synchronized List<WItem> byres(String res) {
+            resolve();
+            List<Entry> found = byres.get(res);
+            return (sorted((found == null) ? new ArrayList<>() : new ArrayList<>(found), -1));
+        }
+
+        private List<WItem> sorted(List<Entry> found, int max) {
+            found.sort((a, b) -> Long.compare(a.seq, b.seq));
+            List<WItem> ret = new ArrayList<>(found.size());
+            for (Entry e : found) {
+                if ((max >= 0) && (ret.size() >= max))
+                    break;
+                ret.add(e.w);
+            }
+            return (ret);
+        }
+
+        synchronized WItem at(int x, int y) {
+            if ((x < 0) || (y < 0) || (x >= gw) || (y >= gh))
+                return (null);
+            Entry e = grid[x + (y * gw)];
+            return (((e != null) && (e.x == x) && (e.y == y)) ? e.w : null);
+        }
+
+        synchronized List<Coord> free(int max) {
+            List<Coord> ret = new ArrayList<>();
+            for (int y = 0; y < gh; y++) {
+                for (int x = 0; x < gw; x++) {
+                    if (grid[x + (y * gw)] == null) {
+                        if ((max >= 0) && (ret.size() >= max))
+                            return (ret);
+                        ret.add(new Coord(x, y));
+                    }
+                }
+            }
+            return (ret);
+        }
+
+        synchronized int[][] occupancy() {
+            int[][] ret = new int[gw][gh];
+            for (int y = 0; y < gh; y++) {
+                for (int x = 0; x < gw; x++) {
+                    if (grid[x + (y * gw)] != null)
+                        ret[x][y] = 1;
+                }
+            }
+            return (ret);
+        }
+    }
 
     @RName("inv")
     public static class $_ implements Factory {
@@ -72,18 +298,21 @@ public class Inventory extends Widget implements DTarget {
     }
 
     public void draw(GOut g) {
+        GOut.Quads q = g.quads();
         Coord c = new Coord();
         for (c.y = 0; c.y < isz.y; c.y++) {
             for (c.x = 0; c.x < isz.x; c.x++) {
-                g.image(invsq, c.mul(sqsz));
+                q.icon(invsq, c.mul(sqsz));
             }
         }
+        q.flush();
         super.draw(g);
     }
 
     public Inventory(Coord sz) {
         super(invsq.sz().add(new Coord(-1, -1)).mul(sz).add(new Coord(1, 1)));
         isz = sz;
+        model.resize(isz);
     }
 
     public boolean mousewheel(Coord c, int amount) {
@@ -109,7 +338,9 @@ public class Inventory extends Widget implements DTarget {
         Coord c = (Coord) args[0];
         if (child instanceof GItem) {
             GItem i = (GItem) child;
-            wmap.put(i, add(new WItem(i), c.mul(sqsz).add(1, 1)));
+            WItem w = add(new WItem(i), c.mul(sqsz).add(1, 1));
+            wmap.put(i, w);
+            model.add(w);
         }
     }
 
@@ -117,10 +348,25 @@ public class Inventory extends Widget implements DTarget {
         super.cdestroy(w);
         if (w instanceof GItem) {
             GItem i = (GItem) w;
-            ui.destroy(wmap.remove(i));
+            WItem wi = wmap.remove(i);
+            if (wi != null)
+                model.remove(wi);
+            ui.destroy(wi);
         }
     }
 
+    public void cresize(Widget ch) {
+        if (ch instanceof WItem)
+            model.changed((WItem) ch);
+    }
+
+    /* Called by items when their infos or resource change. */
+    public void itemchanged(GItem item) {
+        WItem w = wmap.get(item);
+        if (w != null)
+            model.renamed(w);
+    }
+
     public boolean drop(Coord cc, Coord ul) {
         Coord dc = dropul ? ul.add(sqsz.div(2)).div(sqsz) : cc.div(sqsz);
         wdgmsg("drop", dc);
@@ -135,6 +381,7 @@ public class Inventory extends Widget implements DTarget {
         if (msg == "sz") {
             isz = (Coord) args[0];
             resize(invsq.sz().add(new Coord(-1, -1)).mul(isz).add(new Coord(1, 1)));
+            model.resize(isz);
         } else if (msg == "mode") {
             dropul = (((Integer) args[0]) == 0);
         } else {
@@ -241,16 +488,11 @@ public class Inventory extends Widget implements DTarget {
         if (sprite != null) {
             String name = sprite.getname();
             String resname = item.resource().name;
-            for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-                if (wdg instanceof WItem) {
-                    if (!((WItem) wdg).locked()) {
-                        sprite = ((WItem) wdg).item.spr();
-                        if (sprite != null) {
-                            Resource res = ((WItem) wdg).item.resource();
-                            if (res != null && res.name.equals(resname) && (name == null || name.equals(sprite.getname())))
-                                items.add((WItem) wdg);
-                        }
-                    }
+            for (WItem wdg : model.byres(resname)) {
+                if (!wdg.locked()) {
+                    sprite = wdg.item.spr();
+                    if (sprite != null && (name == null || name.equals(sprite.getname())))
+                        items.add(wdg);
                 }
             }
         }
@@ -269,25 +511,20 @@ public class Inventory extends Widget implements DTarget {
         if (sprite != null) {
             String name = sprite.getname();
             String resname = item.resource().name;
-            for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-                if (wdg instanceof WItem) {
-                    if (!((WItem) wdg).locked()) {
-                        GItem it = ((WItem) wdg).item;
-                        sprite = it.spr();
-                        if (sprite != null) {
-                            Resource res = it.resource();
-                            if (res != null && res.name.equals(resname) && (name == null || name.equals(sprite.getname()))) {
-                                if (quality) {
-                                    QBuff bq = it.quality();
-                                    if (bq != null) {
-                                        double q1 = bq.q - q0;
-                                        if (q1 < 0.1 && q1 > -0.1)
-                                            items.add((WItem) wdg);
-                                    }
-                                } else {
-                                    items.add((WItem) wdg);
-                                }
+            for (WItem wdg : model.byres(resname)) {
+                if (!wdg.locked()) {
+                    GItem it = wdg.item;
+                    sprite = it.spr();
+                    if (sprite != null && (name == null || name.equals(sprite.getname()))) {
+                        if (quality) {
+                            QBuff bq = it.quality();
+                            if (bq != null) {
+                                double q1 = bq.q - q0;
+                                if (q1 < 0.1 && q1 > -0.1)
+                                    items.add(wdg);
                             }
+                        } else {
+                            items.add(wdg);
                         }
                     }
                 }
@@ -301,41 +538,23 @@ public class Inventory extends Widget implements DTarget {
        next to the translation
     */
     public List<WItem> getItemsPartial(String... names) {
-        List<WItem> items = new ArrayList<WItem>();
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                String wdgname = ((WItem) wdg).item.getname();
-                for (String name : names) {
-                    if (wdgname.contains(name)) {
-                        items.add((WItem) wdg);
-                        break;
-                    }
-                }
-            }
-        }
+        return model.partial(-1, names);
+    }
+
+    /* Like getItemsPartial, sorted by average quality. */
+    public List<WItem> getItemsPartialByQuality(boolean desc, String... names) {
+        List<WItem> items = model.partial(-1, names);
+        items.sort(desc ? ITEM_COMPARATOR_DESC : ITEM_COMPARATOR_ASC);
         return items;
     }
 
     public WItem getItemPartial(String name) {
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                String wdgname = ((WItem) wdg).item.getname();
-                if (wdgname.contains(name))
-                    return (WItem) wdg;
-            }
-        }
-        return null;
+        List<WItem> items = model.partial(1, name);
+        return items.isEmpty() ? null : items.get(0);
     }
 
     public WItem getItemPartialTrays(String name) {
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                String wdgname = ((WItem) wdg).item.getname();
-                if (wdgname.contains(name))
-                    return (WItem) wdg;
-            }
-        }
-        return null;
+        return getItemPartial(name);
     }
 
     public WItem getItemPartialDrink(String name) {
@@ -354,64 +573,33 @@ public class Inventory extends Widget implements DTarget {
     }
 
     public int getItemPartialCount(String name) {
-        int count = 0;
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                String wdgname = ((WItem) wdg).item.getname();
-                if (wdgname.contains(name))
-                    count++;
-            }
-        }
-        return count;
+        return model.count(name);
     }
 
     public int getFreeSpace() {
-        int feespace = isz.x * isz.y;
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem)
-                feespace -= (wdg.sz.x * wdg.sz.y) / (sqsz.x * sqsz.y);
+        synchronized (model) {
+            return isz.x * isz.y - model.area;
         }
-        return feespace;
     }
 
     // Null if no free slots found
     public Coord getFreeSlot() {
-        int[][] invTable = new int[isz.x][isz.y];
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                WItem item = (WItem) wdg;
-                for (int i = 0; i < item.sz.div(sqsz).y; i++)
-                    for (int j = 0; j < item.sz.div(sqsz).x; j++)
-                        invTable[item.c.div(sqsz).x + j][item.c.div(sqsz).y + i] = 1;
-            }
-        }
-        for (int i = 0; i < isz.y; i++) {
-            for (int j = 0; j < isz.x; j++) {
-                if (invTable[j][i] == 0)
-                    return new Coord(j, i);
-            }
-        }
-        return null;
+        List<Coord> free = model.free(1);
+        return free.isEmpty() ? null : free.get(0);
     }
 
     public List<Coord> getFreeSlots() {
-        List<Coord> cordlist = new ArrayList<>();
-        int[][] invTable = new int[isz.x][isz.y];
-        for (Widget wdg = child; wdg != null; wdg = wdg.next) {
-            if (wdg instanceof WItem) {
-                WItem item = (WItem) wdg;
-                for (int i = 0; i < item.sz.div(sqsz).y; i++)
-                    for (int j = 0; j < item.sz.div(sqsz).x; j++)
-                        invTable[item.c.div(sqsz).x + j][item.c.div(sqsz).y + i] = 1;
-            }
-        }
-        for (int i = 0; i < isz.y; i++) {
-            for (int j = 0; j < isz.x; j++) {
-                if (invTable[j][i] == 0)
-                    cordlist.add(new Coord(j, i));
-            }
-        }
-        return cordlist;
+        return model.free(-1);
+    }
+
+    // The item whose upper left corner is at the given slot, if any
+    public WItem getItemAt(int x, int y) {
+        return model.at(x, y);
+    }
+
+    // 1 = slot taken by an item, 0 = free slot
+    public int[][] occupancy() {
+        return model.occupancy();
     }
 
     public boolean drink(int threshold) {
@@ -2,6 +2,8 @@ package haven;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
@@ -12,24 +14,40 @@ import haven.resutil.FoodInfo;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static haven.QualityList.SingleType.Quality;
 
+/* Tooltip data of items the player has seen, kept in the item_data table
+ * of the dynamic store as compact JSON keyed by resource name. All rows
+ * are read at startup (see init) and only parsed when first looked up;
+ * updates are written behind by Storage.write. Data from the older
+ * one-file-per-item store under /item_data/ is imported on first lookup. */
 public class ItemData {
     private static final ItemData EMPTY = new ItemData();
     private static Gson gson;
+    private static final Map<String, String> stored = new HashMap<>();
+    private static final Map<String, Index> index = new HashMap<>();
+    /* Kinds of tooltip data an item can have stored, for narrowing down
+     * searches before building any infos; see index(String). */
+    public static final int CURIO = 1, FOOD = 2, WEAR = 4, ARMOR = 8, GAST = 16, ATTR = 32, SLOTS = 64, GILDING = 128;
+    private static final String[] kindfields = {"curiosity", "food", "wear", "armor", "gast", "attributes", "slots", "gilding"};
     private static Map<String, ItemData> item_data = new LinkedHashMap<String, ItemData>(9, 0.75f, true) {
         private static final long serialVersionUID = 1L;
 
         protected boolean removeEldestEntry(Map.Entry<String, ItemData> eldest) {
-            return size() > 75;
+            return size() > 512;
         }
 
     };
@@ -150,9 +168,30 @@ public class ItemData {
         return infos;
     }
 
+    public static void init() {
+        Storage.dynamic.ensure(sql -> {
+            try (final Statement stmt = sql.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS item_data ( name TEXT PRIMARY KEY, data TEXT NOT NULL )");
+            }
+        });
+        Storage.dynamic.ensure(sql -> {
+            try (final Statement stmt = sql.createStatement()) {
+                try (final ResultSet res = stmt.executeQuery("SELECT name, data FROM item_data")) {
+                    synchronized (stored) {
+                        while (res.next()) {
+                            stored.put(res.getString(1), res.getString(2));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     public static ItemData get(String name) {
-        if (item_data.containsKey(name)) {
-            return item_data.get(name);
+        synchronized (stored) {
+            if (item_data.containsKey(name)) {
+                return item_data.get(name);
+            }
         }
         ItemData data = load(name);
         if (data == null) {
@@ -161,6 +200,86 @@ public class ItemData {
         return data;
     }
 
+    /* What is known of an item's stored data without building it: the
+     * kinds of data it has, and the names of the FEP and attribute
+     * resources it mentions. */
+    public static class Index {
+        public final int kinds;
+        public final Set<String> feps, attrs;
+
+        private Index(int kinds, Set<String> feps, Set<String> attrs) {
+            this.kinds = kinds;
+            this.feps = feps;
+            this.attrs = attrs;
+        }
+    }
+
+    /* Returns the index of the data stored for the named item, found
+     * from the stored JSON, or null if nothing is known about it yet. */
+    public static Index index(String name) {
+        synchronized (stored) {
+            Index ret = index.get(name);
+            if (ret != null) {
+                return ret;
+            }
+            String json = stored.get(name);
+            if (json == null) {
+                return null;
+            }
+            int k = 0;
+            Set<String> feps = new HashSet<>(), attrs = new HashSet<>();
+            try {
+                JsonObject obj = getGson().fromJson(json, JsonObject.class);
+                for (int i = 0; i < kindfields.length; i++) {
+                    if (obj.has(kindfields[i])) {
+                        k |= 1 << i;
+                    }
+                }
+                if (obj.has("food")) {
+                    JsonElement fep = obj.getAsJsonObject("food").get("fep");
+                    if (fep != null && fep.isJsonArray()) {
+                        for (JsonElement ev : fep.getAsJsonArray()) {
+                            resnames(ev.getAsJsonObject().get("a"), feps);
+                        }
+                    }
+                }
+                for (String field : new String[]{"attributes", "slots", "gilding"}) {
+                    resnames(obj.get(field), attrs);
+                }
+            } catch (RuntimeException e) {
+                return null;
+            }
+            ret = new Index(k, feps, attrs);
+            index.put(name, ret);
+            return ret;
+        }
+    }
+
+    /* Collects the resource names found as strings or object keys
+     * anywhere in el. */
+    private static void resnames(JsonElement el, Set<String> buf) {
+        if (el == null) {
+            return;
+        }
+        if (el.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : el.getAsJsonObject().entrySet()) {
+                if (e.getKey().indexOf('/') >= 0) {
+                    buf.add(e.getKey());
+                }
+                resnames(e.getValue(), buf);
+            }
+        } else if (el.isJsonArray()) {
+            for (JsonElement sub : el.getAsJsonArray()) {
+                resnames(sub, buf);
+            }
+        } else if (el.isJsonPrimitive() && el.getAsJsonPrimitive().isString()) {
+            String str = el.getAsString();
+            if (str.indexOf('/') >= 0) {
+                buf.add(str);
+            }
+        }
+    }
+
     public static ItemData get(Pagina p) {
         List<ItemInfo> infos = p.info();
         if (infos == null || infos.isEmpty()) {
@@ -176,20 +295,52 @@ public class ItemData {
 
         ItemData data = new ItemData(item);
         String name = pagina.res().name;
-        item_data.put(name, data);
-        store(name, data);
+        String json = getGson().toJson(data);
+        synchronized (stored) {
+            item_data.put(name, data);
+            if (json.equals(stored.get(name))) {
+                return;
+            }
+            stored.put(name, json);
+            index.remove(name);
+        }
+        store(name, json);
     }
 
     private static ItemData load(String name) {
-        ItemData data = parse(Config.loadFile(getFilename(name)));
+        String json;
+        boolean legacy = false;
+        synchronized (stored) {
+            json = stored.get(name);
+        }
+        if (json == null) {
+            json = Config.loadFile(getFilename(name));
+            legacy = true;
+        }
+        ItemData data = parse(json);
         if (data != null) {
-            item_data.put(name, data);
+            synchronized (stored) {
+                item_data.put(name, data);
+                if (legacy) {
+                    json = getGson().toJson(data);
+                    stored.put(name, json);
+                    index.remove(name);
+                }
+            }
+            if (legacy) {
+                store(name, json);
+            }
         }
         return data;
     }
 
-    private static void store(String name, ItemData data) {
-        Config.saveFile(getFilename(name), getGson().toJson(data));
+    private static void store(String name, String json) {
+        Storage.dynamic.write(sql -> {
+            final PreparedStatement stmt = Storage.dynamic.prepare("INSERT OR REPLACE INTO item_data VALUES (?, ?)");
+            stmt.setString(1, name);
+            stmt.setString(2, json);
+            stmt.executeUpdate();
+        });
     }
 
     private static String getFilename(String name) {
@@ -208,7 +359,6 @@ public class ItemData {
     private static Gson getGson() {
         if (gson == null) {
             GsonBuilder builder = new GsonBuilder();
-            builder.setPrettyPrinting();
             builder.registerTypeAdapter(Resource.class, new ResourceAdapter().nullSafe());
             builder.enableComplexMapKeySerialization();
             gson = builder.create();
@@ -4,9 +4,12 @@ import haven.QualityList.SingleType;
 import haven.resutil.Curiosity;
 import haven.resutil.FoodInfo;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -104,13 +107,17 @@ public class ItemFilter {
 
     public static final String[] FILTER_HELP = {HELP_SIMPLE, HELP_FULL_TEXT, HELP_CONTENT, HELP_QUALITY, HELP_CURIO, HELP_FEP, HELP_ARMOR, HELP_SYMBEL, HELP_ATTR};
 
+    /* Kind bit for data that ItemData never stores (names, contents,
+     * qualities), so that filters on it never match stored items. */
+    protected static final int UNSTORED = 1 << 30;
+
     public boolean matches(List<ItemInfo> info) {
         for (ItemInfo item : info) {
             if (match(item)) {
                 return true;
             }
         }
-        return match(new QualityList(info));
+        return quality() && match(new QualityList(info));
 
     }
 
@@ -121,6 +128,10 @@ public class ItemFilter {
     final public boolean matches(MenuGrid.Pagina pagina, Session sess) {
         List<ItemInfo> infos = pagina.info();
         if (infos == null || infos.isEmpty()) {
+            ItemData.Index index = ItemData.index(pagina.res().name);
+            if (index != null && !candidate(index)) {
+                return false;
+            }
             return matches(ItemData.get(pagina), sess);
         }
         return matches(infos);
@@ -130,6 +141,46 @@ public class ItemFilter {
         return false;
     }
 
+    /* Whether match(ItemInfo) is all there is to this filter, rather
+     * than it looking at the info list as a whole. */
+    protected boolean perinfo() {
+        return true;
+    }
+
+    /* Whether the filter can match the qualities of the info list. */
+    protected boolean quality() {
+        return false;
+    }
+
+    /* ItemData kinds of which a stored item must have at least one to
+     * possibly match, or 0 if any item might. */
+    protected int kinds() {
+        return 0;
+    }
+
+    /* Whether an item with the indexed stored data might match. */
+    public boolean candidate(ItemData.Index index) {
+        int need = kinds();
+        return need == 0 || (need & index.kinds) != 0;
+    }
+
+    /* Whether any of the named resources, FEP events or attributes,
+     * has a display name starting with text, as given by name. A
+     * resource not yet loaded is assumed to. */
+    protected static boolean anyname(Set<String> resnames, String text, Function<Resource, String> name) {
+        for (String resnm : resnames) {
+            try {
+                String nm = name.apply(Resource.remote().load(resnm).get());
+                if (nm == null || nm.toLowerCase().startsWith(text)) {
+                    return true;
+                }
+            } catch (Loading l) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static ItemFilter create(String query) {
         Compound result = new Compound();
         Matcher m = q.matcher(query);
@@ -229,15 +280,62 @@ public class ItemFilter {
         txt.setprog(0);
     }
 
+    /* Matches items matching all of its filters. Filters that only look
+     * at single infos are run together in one pass over the info list,
+     * dropping out as they match, and the quality list is only built if
+     * some quality filter is left after that. */
     public static class Compound extends ItemFilter {
         List<ItemFilter> filters = new LinkedList<>();
+        private ItemFilter[] perinfo, whole;
+
+        private void compile() {
+            List<ItemFilter> p = new ArrayList<>(), w = new ArrayList<>();
+            for (ItemFilter filter : filters) {
+                (filter.perinfo() ? p : w).add(filter);
+            }
+            perinfo = p.toArray(new ItemFilter[0]);
+            whole = w.toArray(new ItemFilter[0]);
+        }
 
         @Override
         public boolean matches(List<ItemInfo> info) {
             if (filters.isEmpty()) {
                 return false;
             }
-            for (ItemFilter filter : filters) {
+            if (perinfo == null) {
+                compile();
+            }
+            int left = perinfo.length;
+            boolean[] done = new boolean[left];
+            for (ItemInfo item : info) {
+                if (left == 0) {
+                    break;
+                }
+                for (int o = 0; o < perinfo.length; o++) {
+                    if (!done[o] && perinfo[o].match(item)) {
+                        done[o] = true;
+                        left--;
+                    }
+                }
+            }
+            if (left > 0) {
+                QualityList q = null;
+                for (int o = 0; o < perinfo.length; o++) {
+                    if (done[o]) {
+                        continue;
+                    }
+                    if (!perinfo[o].quality()) {
+                        return false;
+                    }
+                    if (q == null) {
+                        q = new QualityList(info);
+                    }
+                    if (!perinfo[o].match(q)) {
+                        return false;
+                    }
+                }
+            }
+            for (ItemFilter filter : whole) {
                 if (!filter.matches(info)) {
                     return false;
                 }
@@ -245,8 +343,27 @@ public class ItemFilter {
             return true;
         }
 
+        @Override
+        protected boolean perinfo() {
+            return false;
+        }
+
+        @Override
+        public boolean candidate(ItemData.Index index) {
+            if (filters.isEmpty()) {
+                return false;
+            }
+            for (ItemFilter filter : filters) {
+                if (!filter.candidate(index)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         public void add(ItemFilter filter) {
             filters.add(filter);
+            perinfo = whole = null;
         }
     }
 
@@ -324,6 +441,11 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected int kinds() {
+            return UNSTORED;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (item instanceof ItemInfo.Contents) {
@@ -374,6 +496,11 @@ public class ItemFilter {
             this.text = text.toLowerCase();
         }
 
+        @Override
+        protected int kinds() {
+            return UNSTORED;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (text != null && !text.isEmpty()) {
@@ -398,6 +525,11 @@ public class ItemFilter {
             super(text, sign, value, opt);
         }
 
+        @Override
+        protected int kinds() {
+            return ItemData.CURIO;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (item instanceof Curiosity) {
@@ -425,6 +557,16 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected boolean quality() {
+            return true;
+        }
+
+        @Override
+        protected int kinds() {
+            return UNSTORED;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (!(item instanceof QualityList)) {
@@ -481,6 +623,22 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected int kinds() {
+            return ItemData.FOOD;
+        }
+
+        @Override
+        public boolean candidate(ItemData.Index index) {
+            if (!super.candidate(index)) {
+                return false;
+            }
+            return text == null || text.length() < 3 || anyname(index.feps, text, res -> {
+                CharWnd.FoodMeter.Event ev = res.layer(CharWnd.FoodMeter.Event.class);
+                return ev != null ? ev.nm : null;
+            });
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (item instanceof FoodInfo) {
@@ -505,6 +663,11 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected int kinds() {
+            return ItemData.FOOD;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (item instanceof FoodInfo) {
@@ -532,6 +695,16 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected boolean perinfo() {
+            return false;
+        }
+
+        @Override
+        protected int kinds() {
+            return ItemData.ARMOR | ItemData.WEAR;
+        }
+
         @Override
         public boolean matches(List<ItemInfo> info) {
             Pair<Integer, Integer> armor = ItemInfo.getArmor(info);
@@ -584,6 +757,11 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected int kinds() {
+            return ItemData.GAST;
+        }
+
         @Override
         protected boolean match(ItemInfo item) {
             if (Reflect.is(item, "Gast")) {
@@ -607,6 +785,35 @@ public class ItemFilter {
             super(text, sign, value, opts);
         }
 
+        @Override
+        protected boolean perinfo() {
+            return false;
+        }
+
+        @Override
+        protected int kinds() {
+            return ItemData.ATTR | ItemData.SLOTS | ItemData.GILDING | ItemData.ARMOR | ItemData.WEAR;
+        }
+
+        @Override
+        public boolean candidate(ItemData.Index index) {
+            if (!super.candidate(index)) {
+                return false;
+            }
+            if (text == null || text.length() < 3) {
+                return false;
+            }
+            /* Armor class counts as attributes, but is not stored
+             * by attribute name. */
+            if ((index.kinds & (ItemData.ARMOR | ItemData.WEAR)) != 0) {
+                return true;
+            }
+            return anyname(index.attrs, text, res -> {
+                Resource.Tooltip tt = res.layer(Resource.tooltip);
+                return tt != null ? tt.t : null;
+            });
+        }
+
         @Override
         public boolean matches(List<ItemInfo> info) {
             Map<Resource, Integer> bonuses = ItemInfo.getBonuses(info);
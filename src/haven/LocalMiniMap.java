@@ -378,7 +378,7 @@ LocalMiniMap extends Widget {
                                 tex = Config.additonalicons.get(res.name);
 							if(tex!=null){
 								try{
-									g.image(tex, p2c(gob.rc).sub(tex.sz().mul(iconZoom).div(2)).add(delta), tex.dim.mul(iconZoom));
+									g.icon(tex, p2c(gob.rc).sub(tex.sz().mul(iconZoom).div(2)).add(delta), tex.dim.mul(iconZoom));
 								}
 								catch(Exception e){
 									System.out.println("Error: "+e);
@@ -511,7 +511,7 @@ LocalMiniMap extends Widget {
                                 tex = gob.isDead() == Boolean.TRUE ? icon.texgrey() : icon.tex();
                             else
                                 tex = Config.additonalicons.get(gob.getres().name);
-                            g.image(tex, p2c(gob.rc).sub(tex.sz().mul(iconZoom).div(2)).add(delta), tex.dim.mul(iconZoom));
+                            g.icon(tex, p2c(gob.rc).sub(tex.sz().mul(iconZoom).div(2)).add(delta), tex.dim.mul(iconZoom));
                         }
                     }
                 } catch (Exception e) { // fail silently
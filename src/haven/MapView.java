@@ -141,7 +141,25 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
     private Thread musselPicker;
     private Thread clayPicker;
     private final PartyHighlight partyHighlight;
-    public static final Set<Long> markedGobs = new HashSet<>();
+    /* Bumped on every change to markedGobs, which gobs compare
+     * against to notice that their highlight may have changed. */
+    public static volatile int markedgen = 0;
+    public static final Set<Long> markedGobs = new HashSet<Long>() {
+        public boolean add(Long id) {
+            markedgen++;
+            return (super.add(id));
+        }
+
+        public boolean remove(Object id) {
+            markedgen++;
+            return (super.remove(id));
+        }
+
+        public void clear() {
+            markedgen++;
+            super.clear();
+        }
+    };
     public static final Material.Colors markedFx = new Material.Colors(new Color(21, 127, 208, 255));
     public Object[] lastItemactClickArgs;
     private static TexCube sky = new TexCube(Resource.loadimg("skycube"));
@@ -982,13 +1000,29 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
             oc.callback(changed);
         }
 
-        class GobSet implements Rendered {
-            private final String nm;
+        final GobCuller culler = new GobCuller();
+
+        /* A grid cell of a static GobSet, cached by the render list
+         * as a unit and culled by its bounding box. The bounds are
+         * kept until the cell's gobs change, or the map grid under
+         * it, whose heights give the gobs their z, does. */
+        class Cell implements Rendered {
+            final Coord key, gc;
             final Collection<Gob> obs = new HashSet<Gob>();
             Object seq = this;
+            private Object bseq = null;
+            private MCache.Grid bgrid = null;
+            private int bgseq;
+            private float z1, z2, r;
+            private boolean bounded;
 
-            GobSet(String nm) {
-                this.nm = nm;
+            Cell(Coord key) {
+                this.key = key;
+                this.gc = new Coord2d((key.x + 0.5) * GobCuller.CELL, (key.y + 0.5) * GobCuller.CELL).floor(MCache.tilesz).div(MCache.cmaps);
+            }
+
+            void invalidate() {
+                bseq = null;
             }
 
             void take(Gob ob) {
@@ -996,12 +1030,50 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
                 seq = ticks;
             }
 
-            void remove(Gob ob) {
-                if (obs.remove(ob))
+            boolean remove(Gob ob) {
+                if (obs.remove(ob)) {
                     seq = ticks;
+                    return (true);
+                }
+                return (false);
             }
 
-            void update() {
+            private void bounds() {
+                MCache.Grid grid;
+                try {
+                    grid = glob.map.getgrid(gc);
+                } catch (Loading l) {
+                    bounded = false;
+                    return;
+                }
+                if ((bseq == seq) && (bgrid == grid) && (bgseq == grid.seq))
+                    return;
+                z1 = Float.POSITIVE_INFINITY;
+                z2 = Float.NEGATIVE_INFINITY;
+                r = 0;
+                bounded = true;
+                for (Gob gob : obs) {
+                    try {
+                        float z = Config.disableelev ? 0 : gob.getc().z;
+                        z1 = Math.min(z1, z);
+                        z2 = Math.max(z2, z);
+                        r = Math.max(r, GobCuller.radius(gob));
+                    } catch (Loading l) {
+                        bounded = false;
+                        return;
+                    }
+                }
+                bseq = seq;
+                bgrid = grid;
+                bgseq = grid.seq;
+            }
+
+            boolean visible() {
+                bounds();
+                if (!bounded || obs.isEmpty())
+                    return (true);
+                float x1 = (key.x * GobCuller.CELL) - r, y1 = (key.y * GobCuller.CELL) - r;
+                return (culler.box(x1, y1, z1 - r, x1 + GobCuller.CELL + (r * 2), y1 + GobCuller.CELL + (r * 2), z2 + r));
             }
 
             public void draw(GOut g) {
@@ -1016,6 +1088,98 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
             public Object staticp() {
                 return (seq);
             }
+        }
+
+        class GobSet implements Rendered {
+            private final String nm;
+            final Collection<Gob> obs = new HashSet<Gob>();
+            final Map<Coord, Cell> cells = new HashMap<Coord, Cell>();
+            final Map<Gob, Cell> gcell = new HashMap<Gob, Cell>();
+
+            GobSet(String nm) {
+                this.nm = nm;
+            }
+
+            private Coord cellof(Gob ob) {
+                return (ob.rc.div(GobCuller.CELL).floor());
+            }
+
+            /* Whether the gobs of this set are static enough to be
+             * kept in cached grid cells. */
+            boolean celled() {
+                return (true);
+            }
+
+            void take(Gob ob) {
+                obs.add(ob);
+                if (celled()) {
+                    Coord k = cellof(ob);
+                    Cell c = cells.get(k);
+                    if (c == null)
+                        cells.put(k, c = new Cell(k));
+                    c.take(ob);
+                    gcell.put(ob, c);
+                }
+            }
+
+            void remove(Gob ob) {
+                if (obs.remove(ob)) {
+                    Cell c = gcell.remove(ob);
+                    if ((c != null) && c.remove(ob) && c.obs.isEmpty())
+                        cells.remove(c.key);
+                }
+            }
+
+            /* Moves a gob that changed while staying in this set to
+             * its current cell, or, if it stays in its cell, has the
+             * cell's bounds recomputed in case its z moved. */
+            void recell(Gob ob) {
+                Cell c = gcell.get(ob);
+                if (c != null) {
+                    if (!c.key.equals(cellof(ob))) {
+                        remove(ob);
+                        take(ob);
+                    } else {
+                        c.invalidate();
+                    }
+                }
+            }
+
+            void update() {
+            }
+
+            public void draw(GOut g) {
+            }
+
+            public boolean setup(RenderList rl) {
+                if (!celled()) {
+                    int drawn = 0;
+                    for (Gob gob : obs) {
+                        if (culler.visible(gob)) {
+                            addgob(rl, gob);
+                            drawn++;
+                        }
+                    }
+                    culler.count(drawn, obs.size() - drawn);
+                } else {
+                    for (Cell c : cells.values()) {
+                        if (c.visible()) {
+                            rl.add(c, null);
+                            culler.count(c.obs.size(), 0);
+                        } else {
+                            culler.count(0, c.obs.size());
+                        }
+                    }
+                }
+                return (false);
+            }
+
+            /* The set itself is set up every frame so that its cells
+             * can be culled; the cells are what the render list
+             * caches. */
+            public Object staticp() {
+                return (null);
+            }
 
             public int size() {
                 return (obs.size());
@@ -1103,8 +1267,8 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
                 }
             }
 
-            public Object staticp() {
-                return (null);
+            boolean celled() {
+                return (false);
             }
         };
         final GobSet[] all = {oldfags, semifags, semistat, newfags, dynamic};
@@ -1116,6 +1280,8 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
                     p.remove(ob);
                 parts.put(ob, set);
                 set.take(ob);
+            } else {
+                set.recell(ob);
             }
         }
 
@@ -1157,6 +1323,21 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
         public boolean setup(RenderList rl) {
             synchronized (oc) {
                 update();
+                Gob.visupdate();
+                Coord3f cc;
+                try {
+                    cc = getcc();
+                } catch (Loading l) {
+                    cc = null;
+                }
+                Coord3f ldir = null;
+                if ((smap != null) && (smap.light != null) && rl.cfg.pref.lshadow.val) {
+                    float[] d = smap.light.dir;
+                    ldir = new Coord3f(-d[0], -d[1], -d[2]);
+                }
+                /* Only the main pass is counted, lest the click map's
+                 * replace its numbers. */
+                culler.frame(camera.proj.fin(Matrix4f.id), camera.view.fin(Matrix4f.id), cc, ldir, !(rl instanceof Clicklist));
                 for (GobSet set : all)
                     rl.add(set, null);
                 ticks++;
@@ -1165,7 +1346,7 @@ public class MapView extends PView implements DTarget, Console.Directory, PFList
         }
 
         public String toString() {
-            return (String.format("%,dd %,dn %,dS %,ds %,do", dynamic.size(), newfags.size(), semistat.size(), semifags.size(), oldfags.size()));
+            return (String.format("%,dd %,dn %,dS %,ds %,do, %,d culled", dynamic.size(), newfags.size(), semistat.size(), semifags.size(), oldfags.size(), culler.culled));
         }
     }
 
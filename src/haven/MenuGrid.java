@@ -1148,15 +1148,26 @@ public class MenuGrid extends Widget {
 
     public void draw(GOut g) {
         double now = Utils.rtime();
+        /* Backgrounds and icons never overlap other slots, so they
+         * can all go in one batch ahead of the overlays. */
+        GOut.Quads q = g.quads();
+        for (int y = 0; y < gsz.y; y++) {
+            for (int x = 0; x < gsz.x; x++) {
+                Coord p = bgsz.mul(new Coord(x, y));
+                q.icon(Inventory.invsq, p);
+                PagButton btn = layout[x][y];
+                if (btn != null)
+                    q.icon(btn.pag.img.get(), p.add(1, 1));
+            }
+        }
+        q.flush();
         for (int y = 0; y < gsz.y; y++) {
             for (int x = 0; x < gsz.x; x++) {
                 Coord p = bgsz.mul(new Coord(x, y));
-                g.image(Inventory.invsq, p);
                 PagButton btn = layout[x][y];
                 if (btn != null) {
                     Pagina info = btn.pag;
                     Tex btex = info.img.get();
-                    g.image(btex, p.add(1, 1));
                     if (info.meter > 0) {
                         double m = info.meter;
                         if (info.dtime > 0)
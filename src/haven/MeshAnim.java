@@ -96,11 +96,18 @@ public class MeshAnim {
         public Morpher create(final MorphedBuf vb) {
             return (new Morpher() {
                 int lseq = -1;
+                /* The frames as of the last update, for a skinning
+                 * task that may run while the animation ticks on. */
+                Frame mcf, mnf;
+                float ma;
 
                 public boolean update() {
                     if (lseq == seq)
                         return (false);
                     lseq = seq;
+                    mcf = cf;
+                    mnf = nf;
+                    ma = Anim.this.a;
                     return (true);
                 }
 
@@ -113,8 +120,8 @@ public class MeshAnim {
                         for (int i = 0; i < l; i++)
                             dst.put(i, src.get(i));
                     }
-                    f = cf;
-                    a = 1.0f - Anim.this.a;
+                    f = mcf;
+                    a = 1.0f - ma;
                     for (int i = 0, po = 0; i < f.idx.length; i++, po += 3) {
                         int vo = f.idx[i] * 3;
                         float x = dst.get(vo), y = dst.get(vo + 1), z = dst.get(vo + 2);
@@ -123,8 +130,8 @@ public class MeshAnim {
                         z += f.pos[po + 2] * a;
                         dst.put(vo, x).put(vo + 1, y).put(vo + 2, z);
                     }
-                    f = nf;
-                    a = Anim.this.a;
+                    f = mnf;
+                    a = ma;
                     for (int i = 0, po = 0; i < f.idx.length; i++, po += 3) {
                         int vo = f.idx[i] * 3;
                         float x = dst.get(vo), y = dst.get(vo + 1), z = dst.get(vo + 2);
@@ -144,9 +151,9 @@ public class MeshAnim {
                         for (int i = 0; i < l; i++)
                             dst.put(i, src.get(i));
                     }
-                    f = cf;
+                    f = mcf;
                     if (f.nrm != null) {
-                        a = 1.0f - Anim.this.a;
+                        a = 1.0f - ma;
                         for (int i = 0, po = 0; i < f.idx.length; i++, po += 3) {
                             int vo = f.idx[i] * 3;
                             float x = dst.get(vo), y = dst.get(vo + 1), z = dst.get(vo + 2);
@@ -156,9 +163,9 @@ public class MeshAnim {
                             dst.put(vo, x).put(vo + 1, y).put(vo + 2, z);
                         }
                     }
-                    f = nf;
+                    f = mnf;
                     if (f.nrm != null) {
-                        a = Anim.this.a;
+                        a = ma;
                         for (int i = 0, po = 0; i < f.idx.length; i++, po += 3) {
                             int vo = f.idx[i] * 3;
                             float x = dst.get(vo), y = dst.get(vo + 1), z = dst.get(vo + 2);
@@ -30,8 +30,23 @@ import java.nio.FloatBuffer;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class MorphedMesh extends FastMesh {
+    /* Skinning is started for every dirty buffer as the render list
+     * is set up and only waited for when the mesh is drawn, so the
+     * buffers of a frame are morphed concurrently on this pool. Any
+     * error is rethrown to the drawing thread by join(). */
+    public static boolean parallel = Utils.getprefb("parskin", true);
+    /* Buffers smaller than this are cheaper to morph inline. */
+    public static final int MINPARALLEL = 256;
+    private static final ForkJoinPool skinpool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), pool -> {
+        java.util.concurrent.ForkJoinWorkerThread th = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        th.setName("Skinning worker " + th.getPoolIndex());
+        th.setDaemon(true);
+        return (th);
+    }, null, false);
     private static Map<Morpher.Factory, Collection<MorphedBuf>> bufs = new CacheMap<Morpher.Factory, Collection<MorphedBuf>>(CacheMap.RefType.WEAK);
 
     private static MorphedBuf buf(VertexBuf buf, Morpher.Factory morph) {
@@ -100,6 +115,7 @@ public class MorphedMesh extends FastMesh {
         public final VertexBuf from;
         private final Morpher morph;
         private final Pair[] parrays, darrays;
+        private ForkJoinTask<?> pending = null;
 
         private static class Pair {
             final FloatArray o, n;
@@ -144,15 +160,34 @@ public class MorphedMesh extends FastMesh {
         }
 
         public void update() {
+            /* The morpher's bone state must not change under a
+             * previous, still running skinning of this buffer. */
+            join();
             if (!morph.update())
                 return;
+            if (parallel && (num >= MINPARALLEL))
+                pending = skinpool.submit(this::morph);
+            else
+                morph();
+        }
+
+        private void morph() {
             for (Pair p : parrays)
                 morph.morphp(p.upd = Utils.wfbuf(p.n.data.capacity()), p.o.data);
             for (Pair p : darrays)
                 morph.morphd(p.upd = Utils.wfbuf(p.n.data.capacity()), p.o.data);
         }
 
+        private void join() {
+            if (pending != null) {
+                ForkJoinTask<?> t = pending;
+                pending = null;
+                t.join();
+            }
+        }
+
         public void update2(GOut g) {
+            join();
             for (Pair p : parrays) {
                 if (p.upd != null) {
                     g.gl.bglCopyBufferf(p.n.data, 0, p.upd, 0, p.upd.capacity());
@@ -99,11 +99,16 @@ public class OptWnd extends Window {
     public static final int HORIZONTAL_MARGIN = 5;
     private static final Text.Foundry fonttest = new Text.Foundry(Text.sans, 10).aa(true);
     public static final int VERTICAL_AUDIO_MARGIN = 5;
+    /* Whether panels are only built when first opened, and how long, in
+     * seconds, a built panel may go unseen before it is emptied again. */
+    public static boolean lazy = Utils.getprefb("optlazy", true);
+    public static final double RELEASE = 120;
     public final Panel main, video, audio, display, map, general, combat, control, uis, uip, quality, mapping, flowermenus, soundalarms, hidesettings, studydesksettings, autodropsettings, keybindsettings, chatsettings, clearboulders, clearbushes, cleartrees, clearhides, discord, additions, modification;
     public Panel waterPanel;
     public Panel current;
     public CheckBox discordcheckbox, menugridcheckbox;
     CheckBox sm = null, rm = null, lt = null, bt = null, ltl, discordrole, discorduser;
+    private boolean mapsettings = false;
 
     public void chpanel(Panel p) {
         if (current != null)
@@ -156,10 +161,50 @@ public class OptWnd extends Window {
     }
 
     public class Panel extends Widget {
+        private final Runnable init;
+        private boolean built;
+        private double lastused;
+
         public Panel() {
+            this(null);
+        }
+
+        /* A panel with an init function fills itself in when first
+         * shown, and is emptied once it has been out of sight for
+         * RELEASE seconds, to be filled in anew when next shown. */
+        public Panel(Runnable init) {
+            this.init = init;
+            this.built = (init == null);
             visible = false;
             c = Coord.z;
         }
+
+        public void build() {
+            if (!built) {
+                built = true;
+                init.run();
+            }
+            lastused = Utils.rtime();
+        }
+
+        public void show() {
+            build();
+            super.show();
+        }
+
+        public void tick(double dt) {
+            super.tick(dt);
+            if (visible && OptWnd.this.visible)
+                lastused = Utils.rtime();
+            else if (lazy && built && (init != null) && ((Utils.rtime() - lastused) > RELEASE))
+                release();
+        }
+
+        private void release() {
+            for (Widget ch = child; ch != null; ch = child)
+                ch.destroy();
+            built = false;
+        }
     }
 
     public class VideoPanel extends Panel {
@@ -563,57 +608,47 @@ public class OptWnd extends Window {
 
     public OptWnd(boolean gopts) {
         super(new Coord(620, 400), "Options", true);
+        setcached(true);
 
         main = add(new Panel());
         video = add(new VideoPanel(main));
-        audio = add(new Panel());
-        display = add(new Panel());
-        map = add(new Panel());
-        general = add(new Panel());
-        combat = add(new Panel());
-        control = add(new Panel());
-        uis = add(new Panel());
-        uip = add(new Panel());
-        quality = add(new Panel());
-        flowermenus = add(new Panel());
-        soundalarms = add(new Panel());
-        hidesettings = add(new Panel());
-        studydesksettings = add(new Panel());
-        autodropsettings = add(new Panel());
-        keybindsettings = add(new Panel());
-        chatsettings = add(new Panel());
+        audio = add(new Panel(this::initAudio));
+        display = add(new Panel(this::initDisplay));
+        map = add(new Panel(() -> {
+            initMap();
+            if (mapsettings)
+                initMapSettings();
+        }));
+        general = add(new Panel(this::initGeneral));
+        combat = add(new Panel(this::initCombat));
+        control = add(new Panel(this::initControl));
+        uis = add(new Panel(this::initUis));
+        uip = add(new Panel(this::initTheme));
+        quality = add(new Panel(this::initQuality));
+        flowermenus = add(new Panel(this::initFlowermenus));
+        soundalarms = add(new Panel(this::initSoundAlarms));
+        hidesettings = add(new Panel(this::initHideMenu));
+        studydesksettings = add(new Panel(this::initstudydesksettings));
+        autodropsettings = add(new Panel(this::initautodropsettings));
+        keybindsettings = add(new Panel(this::initkeybindsettings));
+        chatsettings = add(new Panel(this::initchatsettings));
         clearboulders = add(new Panel());
         clearbushes = add(new Panel());
         cleartrees = add(new Panel());
         clearhides = add(new Panel());
-        additions = add(new Panel());
-        discord = add(new Panel());
-        mapping = add(new Panel());
-        modification = add(new Panel());
-        waterPanel = add(new Panel());
+        additions = add(new Panel(this::initAdditions));
+        discord = add(new Panel(this::initDiscord));
+        mapping = add(new Panel(this::initMapping));
+        modification = add(new Panel(this::initModification));
+        waterPanel = add(new Panel(this::initWater));
 
         initMain(gopts);
-        initAudio();
-        initDisplay();
-        initMap();
-        initGeneral();
-        initCombat();
-        initControl();
-        initUis();
-        initTheme();
-        initQuality();
-        initFlowermenus();
-        initSoundAlarms();
-        initHideMenu();
-        initstudydesksettings();
-        initautodropsettings();
-        initkeybindsettings();
-        initchatsettings();
-        initAdditions();
-        initMapping();
-        initDiscord();
-        initModification();
-        initWater();
+        if (!lazy) {
+            for (Widget ch = child; ch != null; ch = ch.next) {
+                if (ch instanceof Panel)
+                    ((Panel) ch).build();
+            }
+        }
 
         chpanel(main);
     }
@@ -4466,6 +4501,12 @@ public class OptWnd extends Window {
     }
 
     public void setMapSettings() {
+        mapsettings = true;
+        if (map.built)
+            initMapSettings();
+    }
+
+    private void initMapSettings() {
         final String charname = ui.gui.chrid;
 
         CheckListbox boulderlist = new CheckListbox(140, 16) {
@@ -4572,6 +4613,15 @@ public class OptWnd extends Window {
         chpanel(main);
         super.show();
     }
+
+    static {
+        Console.setscmd("optlazy", (cons, args) -> {
+            if (args.length >= 2)
+                Utils.setprefb("optlazy", lazy = Utils.parsebool(args[1]));
+            else
+                cons.out.printf("lazy option panels %s\n", lazy ? "on" : "off");
+        });
+    }
     /*
     private void showChangeLog() {
         Window log = ui.root.add(new Window(new Coord(50, 50), "Changelog"), new Coord(100, 50));
@@ -233,8 +233,11 @@ public abstract class PView extends Widget {
                 if (curf != null)
                     curf.tick("setup");
                 rls.fin();
-                if (curf != null)
-                    curf.tick("sort");
+                if (curf != null) {
+                    curf.add("inst", rls.tinst);
+                    curf.add("cache", rls.tcache);
+                    curf.tick("sort", rls.tinst + rls.tcache);
+                }
                 GOut rg;
                 if (cstate.cur.fb != null) {
                     GLState.Buffer gb = g.basicstate();
@@ -0,0 +1,264 @@
+package haven;
+
+import haven.Skeleton.Pose;
+import haven.Skeleton.PoseMod;
+import haven.Skeleton.ResPose;
+
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Evaluated poses shared between Composited instances playing the
+ * same animations on the same skeleton at (nearly) the same phase,
+ * such as a pen full of idle cows. An entry holds the local and global bone
+ * positions and rotations for a (skeleton, resource poses, quantized
+ * animation time) key, along with the morphed vertex arrays that
+ * PoseMorph skinned for that pose, so that instances hitting the same
+ * entry neither rebuild the skeleton nor reskin their meshes. */
+public class PoseCache {
+    public static boolean enabled = Utils.getprefb("posecache", true);
+    /* Animation time quantum, in seconds. */
+    public static final float QUANTUM = 1.0f / 30.0f;
+    private static final int MAXENTRIES = 256, MAXMORPHS = 16;
+    /* The total number of floats held by all entries, bone poses and
+     * morphed vertices together, past which the least recently used
+     * entries are evicted. */
+    private static final long MAXFLOATS = 4 << 20;
+    public static long phits, pmisses, mhits, mmisses;
+    private static long nfloats = 0;
+
+    private static final Map<Key, Entry> cache = new LinkedHashMap<Key, Entry>(MAXENTRIES, 0.75f, true);
+
+    /* Must be called with the cache locked. */
+    private static void trim() {
+        for (Iterator<Entry> i = cache.values().iterator(); i.hasNext() && ((cache.size() > MAXENTRIES) || (nfloats > MAXFLOATS)); ) {
+            Entry e = i.next();
+            nfloats -= e.nfloats;
+            e.live = false;
+            i.remove();
+        }
+    }
+
+    static {
+        Console.setscmd("posecache", (cons, args) -> {
+            if (args.length >= 2) {
+                if (args[1].equals("reset")) {
+                    synchronized (cache) {
+                        for (Entry e : cache.values())
+                            e.live = false;
+                        cache.clear();
+                        nfloats = 0;
+                        phits = pmisses = mhits = mmisses = 0;
+                    }
+                } else {
+                    Utils.setprefb("posecache", enabled = Utils.parsebool(args[1]));
+                }
+            } else {
+                synchronized (cache) {
+                    cons.out.printf("%d entries, %dk floats, poses: %d hits, %d misses (%.1f%%), morphs: %d hits, %d misses (%.1f%%)\n", cache.size(), nfloats >> 10,
+                            phits, pmisses, rate(phits, pmisses), mhits, mmisses, rate(mhits, mmisses));
+                }
+            }
+        });
+    }
+
+    private static double rate(long h, long m) {
+        return (((h + m) == 0) ? 0.0 : ((100.0 * h) / (h + m)));
+    }
+
+    public static class Key {
+        private final Skeleton skel;
+        private final ResPose[] poses;
+        private final long[] phases;
+        private final int hash;
+
+        private Key(Skeleton skel, ResPose[] poses, long[] phases) {
+            this.skel = skel;
+            this.poses = poses;
+            this.phases = phases;
+            int h = System.identityHashCode(skel);
+            for (int i = 0; i < poses.length; i++)
+                h = (h * 31) + System.identityHashCode(poses[i]) + (int) (phases[i] * 17);
+            this.hash = h;
+        }
+
+        public int hashCode() {
+            return (hash);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return (false);
+            Key k = (Key) o;
+            if ((k.skel != skel) || (k.poses.length != poses.length))
+                return (false);
+            for (int i = 0; i < poses.length; i++) {
+                if ((k.poses[i] != poses[i]) || (k.phases[i] != phases[i]))
+                    return (false);
+            }
+            return (true);
+        }
+    }
+
+    public static class Entry {
+        final float[][] lpos, lrot, gpos, grot;
+        private final Map<FloatBuffer, Morphed> morphed = new IdentityHashMap<FloatBuffer, Morphed>();
+        /* The floats held by the entry, and whether they are counted
+         * against the cache, which they stop being once the entry is
+         * evicted. */
+        private long nfloats;
+        private boolean live;
+
+        private Entry(Pose p) {
+            int nb = p.gpos.length;
+            lpos = new float[nb][];
+            lrot = new float[nb][];
+            gpos = new float[nb][];
+            grot = new float[nb][];
+            for (int i = 0; i < nb; i++) {
+                lpos[i] = p.lpos[i].clone();
+                lrot[i] = p.lrot[i].clone();
+                gpos[i] = p.gpos[i].clone();
+                grot[i] = p.grot[i].clone();
+            }
+            nfloats = nb * 14;
+        }
+
+        /* Returns true if dst was filled from a previous skinning of
+         * src under this pose. Mode identifies the scaling options the
+         * result was skinned with. */
+        public boolean morphed(FloatBuffer dst, FloatBuffer src, int mode) {
+            Morphed m;
+            synchronized (cache) {
+                m = morphed.get(src);
+            }
+            boolean hit = false;
+            if (m != null) {
+                /* The data may be replaced in place by putmorphed(). */
+                synchronized (m) {
+                    if (m.mode == mode) {
+                        dst.position(0);
+                        dst.put(m.data);
+                        dst.rewind();
+                        hit = true;
+                    }
+                }
+            }
+            synchronized (cache) {
+                if (hit)
+                    mhits++;
+                else
+                    mmisses++;
+            }
+            return (hit);
+        }
+
+        /* Stores the skinning of src, reusing the array of a previous
+         * skinning of it under another mode. */
+        public void putmorphed(FloatBuffer dst, FloatBuffer src, int mode) {
+            int n = dst.capacity();
+            Morphed m;
+            synchronized (cache) {
+                m = morphed.get(src);
+                if ((m == null) && (morphed.size() >= MAXMORPHS))
+                    return;
+            }
+            if ((m != null) && (m.data.length == n)) {
+                synchronized (m) {
+                    m.mode = mode;
+                    dst.position(0);
+                    dst.get(m.data);
+                    dst.rewind();
+                }
+                return;
+            }
+            float[] d = new float[n];
+            dst.position(0);
+            dst.get(d);
+            dst.rewind();
+            synchronized (cache) {
+                Morphed old = morphed.put(src, new Morphed(mode, d));
+                grow(n - ((old == null) ? 0 : old.data.length));
+            }
+        }
+
+        /* Must be called with the cache locked. */
+        private void grow(long n) {
+            nfloats += n;
+            if (live) {
+                PoseCache.nfloats += n;
+                trim();
+            }
+        }
+    }
+
+    private static class Morphed {
+        int mode;
+        final float[] data;
+
+        Morphed(int mode, float[] data) {
+            this.mode = mode;
+            this.data = data;
+        }
+    }
+
+    /* Returns the key of the current state of mods, or null if it
+     * cannot be shared (non-resource pose modifiers). */
+    public static Key key(Skeleton skel, PoseMod[] mods) {
+        if (!enabled || (mods.length == 0))
+            return (null);
+        ResPose[] poses = new ResPose[mods.length];
+        long[] phases = new long[mods.length];
+        for (int i = 0; i < mods.length; i++) {
+            if (!(mods[i] instanceof ResPose.ResMod))
+                return (null);
+            ResPose.ResMod m = (ResPose.ResMod) mods[i];
+            poses[i] = m.respose();
+            phases[i] = m.phase(QUANTUM);
+        }
+        return (new Key(skel, poses, phases));
+    }
+
+    /* Loads the cached pose for key into p, returning its entry, or
+     * null if there is none yet. */
+    public static Entry load(Key key, Pose p) {
+        Entry e;
+        synchronized (cache) {
+            e = cache.get(key);
+            if (e == null) {
+                pmisses++;
+                return (null);
+            }
+            phits++;
+        }
+        /* The local pose is restored too, since a following
+         * interpolation starts out from a copy of it. */
+        for (int i = 0; i < e.gpos.length; i++) {
+            System.arraycopy(e.lpos[i], 0, p.lpos[i], 0, 3);
+            System.arraycopy(e.lrot[i], 0, p.lrot[i], 0, 4);
+            System.arraycopy(e.gpos[i], 0, p.gpos[i], 0, 3);
+            System.arraycopy(e.grot[i], 0, p.grot[i], 0, 4);
+        }
+        p.seq++;
+        p.shared = e;
+        return (e);
+    }
+
+    public static Entry store(Key key, Pose p) {
+        Entry e = new Entry(p);
+        synchronized (cache) {
+            Entry old = cache.put(key, e);
+            if (old != null) {
+                nfloats -= old.nfloats;
+                old.live = false;
+            }
+            e.live = true;
+            nfloats += e.nfloats;
+            trim();
+        }
+        p.shared = e;
+        return (e);
+    }
+}
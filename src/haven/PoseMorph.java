@@ -62,7 +62,6 @@ public class PoseMorph implements Morpher.Factory {
     public final Pose pose;
     private float[][] offs;
     private int seq = -1;
-    private String name = null;
 
     public PoseMorph(Pose pose) {
         this.pose = pose;
@@ -100,12 +99,28 @@ public class PoseMorph implements Morpher.Factory {
         return (ba.names[retb]);
     }
 
+    private int apv(MorphedBuf vb) {
+        return (vb.buf(BoneArray.class).n);
+    }
+
+    private static float[] grow(float[] buf, int n) {
+        return (((buf == null) || (buf.length < n)) ? new float[n] : buf);
+    }
+
+    private static boolean flat(FloatBuffer buf) {
+        return (buf.hasArray() && (buf.arrayOffset() == 0));
+    }
+
     private void update() {
         if (seq == pose.seq)
             return;
         seq = pose.seq;
-        for (int i = 0; i < offs.length; i++)
-            pose.boneoff(i, offs[i]);
+        /* Made anew rather than overwritten, since skinning tasks of
+         * other buffers may still be reading the previous one. */
+        float[][] noffs = new float[offs.length][16];
+        for (int i = 0; i < noffs.length; i++)
+            pose.boneoff(i, noffs[i]);
+        offs = noffs;
     }
 
     public static class BoneArray extends VertexBuf.IntArray implements MorphedMesh.MorphArray {
@@ -203,108 +218,130 @@ public class PoseMorph implements Morpher.Factory {
             else
                 nb.data.put(i, xl[ob.data.get(i)]);
         }
+        /* Flat copies of the (remapped) bone indices and weights, so
+         * that skinning runs over plain arrays. */
+        final int[] bones = new int[nb.data.capacity()];
+        final float[] weights = new float[bones.length];
+        ((IntBuffer) nb.data.duplicate().rewind()).get(bones);
+        ((FloatBuffer) vb.buf(WeightArray.class).data.duplicate().rewind()).get(weights);
         return (new Morpher() {
             private int pseq = -1;
+            private float[] tsrc, tdst;
+            /* The bone transforms and shared pose as of the last
+             * update, which a skinning task submitted after it keeps
+             * using however the pose moves on meanwhile. */
+            private float[][] coffs;
+            private PoseCache.Entry cshared;
+
+            /* Source arrays are shared between all instances of a mesh
+             * and may be read concurrently, so never move their
+             * position. */
+            private float[] src(FloatBuffer src) {
+                if (flat(src))
+                    return (src.array());
+                tsrc = grow(tsrc, src.capacity());
+                ((FloatBuffer) src.duplicate().rewind()).get(tsrc, 0, src.capacity());
+                return (tsrc);
+            }
 
             public boolean update() {
                 if (pseq == pose.seq)
                     return (false);
                 PoseMorph.this.update();
                 pseq = pose.seq;
+                coffs = PoseMorph.this.offs;
+                cshared = pose.shared;
                 return (true);
             }
 
+            private int mode(BoneArray ba) {
+                if (!Config.biganimals)
+                    return (0);
+                if (Config.smallworld)
+                    return (1);
+                return (Config.bigAnimals.contains(ba.names[0]) ? 2 : 3);
+            }
+
             public void morphp(FloatBuffer dst, FloatBuffer src) {
-                BoneArray ba = vb.buf(BoneArray.class);
-                int apv = ba.n;
-                IntBuffer bl = ba.data;
-                FloatBuffer wl = vb.buf(WeightArray.class).data;
-                int vo = 0, ao = 0;
-                for (int i = 0; i < vb.num; i++) {
-                    float opx = src.get(vo), opy = src.get(vo + 1), opz = src.get(vo + 2);
+                PoseCache.Entry sh = cshared;
+                int mode = mode(vb.buf(BoneArray.class));
+                if ((sh != null) && sh.morphed(dst, src, mode))
+                    return;
+                morphp0(dst, src, mode);
+                if (sh != null)
+                    sh.putmorphed(dst, src, mode);
+            }
+
+            public void morphd(FloatBuffer dst, FloatBuffer src) {
+                PoseCache.Entry sh = cshared;
+                if ((sh != null) && sh.morphed(dst, src, -1))
+                    return;
+                morphd0(dst, src);
+                if (sh != null)
+                    sh.putmorphed(dst, src, -1);
+            }
+
+            private void morphp0(FloatBuffer dst, FloatBuffer src, int mode) {
+                /* Big animals: the bone-weighted part of the position is
+                 * scaled up. */
+                float sc = (mode == 1) ? 6 : ((mode == 2) ? 2 : 1);
+                float[] s = src(src);
+                float[] d = flat(dst) ? dst.array() : (tdst = grow(tdst, dst.capacity()));
+                int[] bl = bones;
+                float[] wl = weights;
+                float[][] offs = coffs;
+                int apv = PoseMorph.this.apv(vb), n = vb.num * 3;
+                for (int vo = 0, ao = 0; vo < n; vo += 3, ao += apv) {
+                    float opx = s[vo], opy = s[vo + 1], opz = s[vo + 2];
                     float npx = 0, npy = 0, npz = 0;
                     float rw = 1;
                     for (int o = 0; o < apv; o++) {
-                        int bi = bl.get(ao + o);
+                        int bi = bl[ao + o];
                         if (bi < 0)
                             break;
-                        float bw = wl.get(ao + o);
+                        float bw = wl[ao + o];
                         float[] xf = offs[bi];
-                        //Big Animals HERE!!!!  ! ! ! !
-                        if (!Config.biganimals) {
-                            if (name == null) {
-                                name = ba.names[0];
-                                //System.out.println(name);
-                            }
-                            //Squirrel > centipede > forest lizard > grasshopper > rabbit > toad
-                            //Large Animal
-                            npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw;
-                            npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw;
-                            npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw;
-                        } else {
-                            if (name == null) {
-                                name = ba.names[0];
-                                //System.out.println(name);
-                            }
-                            if (Config.smallworld) {
-                                npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw * 6;
-                                npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw * 6;
-                                npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw * 6;
-                            } else {
-                                if (Config.bigAnimals.contains(name)) {
-                                    npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw * 2;
-                                    npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw * 2;
-                                    npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw * 2;
-                                } else {
-                                    npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw;
-                                    npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw;
-                                    npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw;
-                                }
-                            }
-                        }
+                        npx += ((xf[0] * opx) + (xf[4] * opy) + (xf[8] * opz) + xf[12]) * bw;
+                        npy += ((xf[1] * opx) + (xf[5] * opy) + (xf[9] * opz) + xf[13]) * bw;
+                        npz += ((xf[2] * opx) + (xf[6] * opy) + (xf[10] * opz) + xf[14]) * bw;
                         rw -= bw;
                     }
-                    npx += opx * rw;
-                    npy += opy * rw;
-                    npz += opz * rw;
-                    dst.put(vo, npx);
-                    dst.put(vo + 1, npy);
-                    dst.put(vo + 2, npz);
-                    vo += 3;
-                    ao += apv;
+                    d[vo] = (npx * sc) + (opx * rw);
+                    d[vo + 1] = (npy * sc) + (opy * rw);
+                    d[vo + 2] = (npz * sc) + (opz * rw);
                 }
+                if (d == tdst)
+                    ((FloatBuffer) dst.duplicate().rewind()).put(d, 0, n);
             }
 
-            public void morphd(FloatBuffer dst, FloatBuffer src) {
-                BoneArray ba = vb.buf(BoneArray.class);
-                int apv = ba.n;
-                IntBuffer bl = ba.data;
-                FloatBuffer wl = vb.buf(WeightArray.class).data;
-                int vo = 0, ao = 0;
-                for (int i = 0; i < vb.num; i++) {
-                    float onx = src.get(vo), ony = src.get(vo + 1), onz = src.get(vo + 2);
+            private void morphd0(FloatBuffer dst, FloatBuffer src) {
+                float[] s = src(src);
+                float[] d = flat(dst) ? dst.array() : (tdst = grow(tdst, dst.capacity()));
+                int[] bl = bones;
+                float[] wl = weights;
+                float[][] offs = coffs;
+                int apv = PoseMorph.this.apv(vb), n = vb.num * 3;
+                for (int vo = 0, ao = 0; vo < n; vo += 3, ao += apv) {
+                    float onx = s[vo], ony = s[vo + 1], onz = s[vo + 2];
                     float nnx = 0, nny = 0, nnz = 0;
                     float rw = 1;
                     for (int o = 0; o < apv; o++) {
-                        int bi = bl.get(ao + o);
+                        int bi = bl[ao + o];
                         if (bi < 0)
                             break;
-                        float bw = wl.get(ao + o);
+                        float bw = wl[ao + o];
                         float[] xf = offs[bi];
                         nnx += ((xf[0] * onx) + (xf[4] * ony) + (xf[8] * onz)) * bw;
                         nny += ((xf[1] * onx) + (xf[5] * ony) + (xf[9] * onz)) * bw;
                         nnz += ((xf[2] * onx) + (xf[6] * ony) + (xf[10] * onz)) * bw;
                         rw -= bw;
                     }
-                    nnx += onx * rw;
-                    nny += ony * rw;
-                    nnz += onz * rw;
-                    dst.put(vo, nnx);
-                    dst.put(vo + 1, nny);
-                    dst.put(vo + 2, nnz);
-                    vo += 3;
-                    ao += apv;
+                    d[vo] = nnx + (onx * rw);
+                    d[vo + 1] = nny + (ony * rw);
+                    d[vo + 2] = nnz + (onz * rw);
                 }
+                if (d == tdst)
+                    ((FloatBuffer) dst.duplicate().rewind()).put(d, 0, n);
             }
         });
     }
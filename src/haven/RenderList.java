@@ -58,6 +58,14 @@ public class RenderList {
         public Cached statroot;
         public Disposable disp;
         int instnum;
+        /* Set on the slots of an instanced batch that spans several
+         * cache roots; see instancify(). */
+        boolean xinst;
+        Rendered ir;
+        Buffer ios;
+        /* The order in which the slot was added this frame, which
+         * identifies it across frames for coherent sorting. */
+        int tidx;
     }
 
     class SavedSlot {
@@ -66,11 +74,15 @@ public class RenderList {
         final Rendered.Order o;
         final int instnum;
 
+        SavedSlot(Rendered r, Buffer st, Rendered.Order o, int instnum) {
+            this.r = r;
+            this.st = st;
+            this.o = o;
+            this.instnum = instnum;
+        }
+
         SavedSlot(Slot from) {
-            this.r = from.r;
-            this.st = from.os.copy();
-            this.o = from.o;
-            this.instnum = from.instnum;
+            this(from.r, from.os.copy(), from.o, from.instnum);
         }
     }
 
@@ -133,10 +145,14 @@ public class RenderList {
         Slot s;
         if ((s = list[i]) == null)
             s = list[i] = new Slot();
+        s.tidx = i;
         s.statroot = null;
         s.skip = false;
         s.disp = null;
         s.instnum = 0;
+        s.xinst = false;
+        s.ir = null;
+        s.ios = null;
         return (s);
     }
 
@@ -300,9 +316,10 @@ public class RenderList {
                 return (ret);
             if ((ret = ((System.identityHashCode(a.r) & 0x7fffffff) - (System.identityHashCode(b.r) & 0x7fffffff))) != 0)
                 return (ret);
-            if ((ret = ((System.identityHashCode(a.statroot) & 0x7fffffff) - (System.identityHashCode(b.statroot) & 0x7fffffff))) != 0)
+            /* Group instanceable slots across cache roots. */
+            if ((ret = ((a.ihash & 0x7fffffff) - (b.ihash & 0x7fffffff))) != 0)
                 return (ret);
-            return ((a.ihash & 0x7fffffff) - (b.ihash & 0x7fffffff));
+            return ((System.identityHashCode(a.statroot) & 0x7fffffff) - (System.identityHashCode(b.statroot) & 0x7fffffff));
         }
     };
 
@@ -364,7 +381,7 @@ public class RenderList {
     private void updcache() {
         for (int i = 0; (i < cur) && list[i].d; i++) {
             Cached c;
-            if (list[i].skip || ((c = list[i].statroot) == null))
+            if ((list[i].skip && !list[i].xinst) || ((c = list[i].statroot) == null))
                 continue;
             if (c.slots.isEmpty()) {
                 if (newcache.get(c) != null) {
@@ -374,6 +391,13 @@ public class RenderList {
                 }
                 newcache.put(c, c);
             }
+            if (list[i].xinst) {
+                /* Batches spanning roots are redone every frame, so
+                 * each root only remembers its own slots. */
+                Slot s = list[i];
+                c.slots.add(new SavedSlot((s.ir != null) ? s.ir : s.r, (s.ios != null) ? s.ios : s.os.copy(), s.o, 0));
+                continue;
+            }
             c.slots.add(new SavedSlot(list[i]));
             if (list[i].disp != null) {
                 c.disp.add(list[i].disp);
@@ -388,6 +412,116 @@ public class RenderList {
         newcache = new HashMap<Cached, Cached>();
     }
 
+    /* Frame-to-frame coherent sorting: the drawable slots are first
+     * laid out in the order their renderers had after the previous
+     * frame's sort (an O(n) bucket pass), which is nearly sorted when
+     * the scene changes little, and then repaired with an insertion
+     * sort. Should the repair need too many moves, it gives up and
+     * falls back to a full sort.
+     *
+     * Slots are matched with the previous frame by the order in which
+     * they were added, which is stable as long as the scene is, rather
+     * than by renderer, since many slots may share one renderer (such
+     * as the trees of a forest sharing a mesh). A slot whose renderer
+     * differs from last frame's in the same place is put last. */
+    public static boolean coherent = Utils.getprefb("rlcoherent", true);
+    /* Sorts done coherently, those that fell back to a full sort, and
+     * the slots sorted and those without a previous position. */
+    public static long nsorts, nfallbacks, nslots, nmisses;
+    private int[] prevpos = new int[0];
+    private Rendered[] prevr = new Rendered[0];
+    private Slot[] sbuf = new Slot[0];
+    private int[] pbuf = new int[0];
+    private int prevnd = 0;
+    /* Timings of the last fin(), in nanoseconds, and whether its sort
+     * was repaired incrementally. */
+    public long tsort, tinst, tcache;
+    public boolean repaired;
+
+    private void sort(int nd) {
+        repaired = false;
+        if (coherent && (prevnd > 0)) {
+            if (pbuf.length < nd) {
+                pbuf = new int[nd];
+                sbuf = new Slot[nd];
+            }
+            int[] cnt = new int[prevnd + 2];
+            int miss = 0;
+            for (int i = 0; i < nd; i++) {
+                Slot s = list[i];
+                int p;
+                if ((s.tidx < prevr.length) && (prevr[s.tidx] == s.r)) {
+                    p = prevpos[s.tidx];
+                } else {
+                    p = prevnd;
+                    miss++;
+                }
+                pbuf[i] = p;
+                cnt[p + 1]++;
+            }
+            for (int i = 1; i < cnt.length; i++)
+                cnt[i] += cnt[i - 1];
+            for (int i = 0; i < nd; i++)
+                sbuf[cnt[pbuf[i]]++] = list[i];
+            System.arraycopy(sbuf, 0, list, 0, nd);
+            Arrays.fill(sbuf, 0, nd, null);
+            repaired = repair(nd, nd * 4);
+            nsorts++;
+            nslots += nd;
+            nmisses += miss;
+            if (!repaired)
+                nfallbacks++;
+        }
+        if (!repaired)
+            Arrays.sort(list, 0, nd, cmp);
+        if (prevr.length < cur) {
+            prevr = new Rendered[list.length];
+            prevpos = new int[list.length];
+        } else {
+            Arrays.fill(prevr, cur, prevr.length, null);
+        }
+        for (int i = 0; i < cur; i++) {
+            Slot s = list[i];
+            prevr[s.tidx] = (i < nd) ? s.r : null;
+            prevpos[s.tidx] = i;
+        }
+        prevnd = nd;
+    }
+
+    private boolean repair(int nd, int maxmoves) {
+        int moves = 0;
+        for (int i = 1; i < nd; i++) {
+            Slot s = list[i];
+            int o = i - 1;
+            if (cmp.compare(list[o], s) <= 0)
+                continue;
+            while ((o >= 0) && (cmp.compare(list[o], s) > 0)) {
+                list[o + 1] = list[o];
+                o--;
+                if (++moves > maxmoves) {
+                    list[o + 1] = s;
+                    return (false);
+                }
+            }
+            list[o + 1] = s;
+        }
+        return (true);
+    }
+
+    static {
+        Console.setscmd("rlcoherent", (cons, args) -> {
+            if (args.length >= 2) {
+                Utils.setprefb("rlcoherent", coherent = Utils.parsebool(args[1]));
+            } else {
+                cons.out.printf("coherent sorting %s\n", coherent ? "on" : "off");
+                cons.out.printf("%d sorts, %d fallbacks (%.1f%%), %d slots, %d without previous position (%.1f%%)\n",
+                        nsorts, nfallbacks, (nsorts == 0) ? 0.0 : (nfallbacks * 100.0 / nsorts),
+                        nslots, nmisses, (nslots == 0) ? 0.0 : (nmisses * 100.0 / nslots));
+                nsorts = nfallbacks = nslots = nmisses = 0;
+            }
+        });
+    }
+
     private int trimseq = 0;
 
     public void fin() {
@@ -416,9 +550,16 @@ public class RenderList {
             if (s.d)
                 s.ihash = s.os.ihash();
         }
-        Arrays.sort(list, 0, nd, cmp);
+        long st = System.nanoTime();
+        sort(nd);
+        long it = System.nanoTime();
         instancify();
+        long ct = System.nanoTime();
         updcache();
+        long et = System.nanoTime();
+        tsort = it - st;
+        tinst = ct - it;
+        tcache = et - ct;
         if (trimseq++ > 100) {
             /* XXX: Trimming the slot-list is fairly delicate business
              * due to how it interacts with the GC. Keeping a bloated
@@ -460,7 +601,12 @@ public class RenderList {
         }
     }
 
+    /* Number of instanced batches in the last frame that merged slots
+     * from several cache roots. */
+    public int xbatches;
+
     private void instancify() {
+        xbatches = 0;
         if (!cfg.pref.instancing.val)
             return;
         List<Buffer> instbuf = new ArrayList<Buffer>();
@@ -473,14 +619,16 @@ public class RenderList {
                 /* XXX: How to handle eyeorder and similar things is... tricky. This is an ugly hack. Please replace. */
                 if (!(s.r instanceof Rendered.Instanced) || (s.os.get(Rendered.order) instanceof Rendered.EyeOrder))
                     break tryinst;
-                boolean copy = (s.statroot != null);
+                boolean xroot = false;
                 instbuf.clear();
-                instbuf.add(copy ? s.os.copy() : s.os);
+                instbuf.add((s.statroot != null) ? s.os.copy() : s.os);
                 for (; (o < cur) && list[o].d; o++) {
                     Slot t = list[o];
-                    if ((t.r != s.r) || (t.statroot != s.statroot) || (t.ihash != s.ihash) || !s.os.iequals(t.os))
+                    if ((t.r != s.r) || (t.ihash != s.ihash) || !s.os.iequals(t.os))
                         break;
-                    instbuf.add(copy ? t.os.copy() : t.os);
+                    if (t.statroot != s.statroot)
+                        xroot = true;
+                    instbuf.add((t.statroot != null) ? t.os.copy() : t.os);
                 }
                 if (o - i < INSTANCE_THRESHOLD)
                     break tryinst;
@@ -490,6 +638,15 @@ public class RenderList {
                 Buffer ist = GLState.inststate(cfg, instbuf);
                 if (ist == null)
                     break tryinst;
+                if (xroot) {
+                    s.ir = s.r;
+                    s.ios = instbuf.get(0);
+                    if (s.statroot == null)
+                        s.ios = s.ios.copy();
+                    for (int u = i; u < o; u++)
+                        list[u].xinst = true;
+                    xbatches++;
+                }
                 s.r = ir;
                 s.os = ist;
                 s.instnum = instbuf.size();
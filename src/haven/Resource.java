@@ -76,8 +76,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Resource implements Serializable {
     public static Resource fake = new Resource(null, "fake", -1);
@@ -397,15 +404,162 @@ public class Resource implements Serializable {
         }
     }
 
+    public static class LoadStats {
+        public static final int NSLOW = 20;
+        public final Histogram qwait = new Histogram(), fetch = new Histogram(), parse = new Histogram();
+        private final Map<ResSource, long[]> srcs = new java.util.IdentityHashMap<ResSource, long[]>();
+        private final java.util.PriorityQueue<Sample> slowest = new java.util.PriorityQueue<Sample>(NSLOW + 1, (a, b) -> Long.compare(a.total, b.total));
+        private int fallbacks, failures;
+
+        public static class Sample {
+            public final String name;
+            public final ResSource src;
+            public final long qwait, fetch, parse, total;
+
+            Sample(String name, ResSource src, long qwait, long fetch, long parse) {
+                this.name = name;
+                this.src = src;
+                this.qwait = qwait;
+                this.fetch = fetch;
+                this.parse = parse;
+                this.total = qwait + fetch + parse;
+            }
+        }
+
+        void hit(ResSource src, boolean hit) {
+            synchronized (srcs) {
+                long[] c = srcs.get(src);
+                if (c == null)
+                    srcs.put(src, c = new long[2]);
+                c[hit ? 0 : 1]++;
+            }
+        }
+
+        synchronized void loaded(Sample s, int tries) {
+            if (s.src == null)
+                failures++;
+            else if (tries > 1)
+                fallbacks++;
+            slowest.add(s);
+            if (slowest.size() > NSLOW)
+                slowest.poll();
+        }
+
+        public List<Sample> slowest() {
+            List<Sample> ret;
+            synchronized (this) {
+                ret = new ArrayList<Sample>(slowest);
+            }
+            ret.sort((a, b) -> Long.compare(b.total, a.total));
+            return (ret);
+        }
+
+        public void reset() {
+            qwait.reset();
+            fetch.reset();
+            parse.reset();
+            synchronized (srcs) {
+                srcs.clear();
+            }
+            synchronized (this) {
+                slowest.clear();
+                fallbacks = failures = 0;
+            }
+        }
+
+        public void report(PrintWriter out, boolean full) {
+            out.println("  queue wait (ms): " + qwait.summary(1e6));
+            out.println("  fetch (ms):      " + fetch.summary(1e6));
+            out.println("  parse (ms):      " + parse.summary(1e6));
+            synchronized (this) {
+                out.printf("  fallbacks: %d, failures: %d\n", fallbacks, failures);
+            }
+            synchronized (srcs) {
+                for (Map.Entry<ResSource, long[]> e : srcs.entrySet()) {
+                    long[] c = e.getValue();
+                    out.printf("  %s: %d hits, %d misses (%.1f%%)\n", e.getKey(), c[0], c[1], (c[0] + c[1] == 0) ? 0.0 : (100.0 * c[0] / (c[0] + c[1])));
+                }
+            }
+            out.println("  slowest:");
+            for (Sample s : slowest())
+                out.printf("    %-40s %8.2f ms (queue %.2f, fetch %.2f, parse %.2f) from %s\n", s.name, s.total / 1e6, s.qwait / 1e6, s.fetch / 1e6, s.parse / 1e6, s.src);
+            if (full) {
+                out.println("  queue wait histogram (ms):");
+                qwait.dump(out, 1e6);
+                out.println("  fetch histogram (ms):");
+                fetch.dump(out, 1e6);
+                out.println("  parse histogram (ms):");
+                parse.dump(out, 1e6);
+            }
+        }
+    }
+
+    static {
+        Console.setscmd("resstats", (cons, args) -> {
+            if ((args.length >= 2) && args[1].equals("reset")) {
+                local().stats.reset();
+                remote().stats.reset();
+            } else if ((args.length >= 3) && args[1].equals("dump")) {
+                try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(args[2]), Utils.utf8))) {
+                    out.println("local:");
+                    local().stats.report(out, true);
+                    out.println("remote:");
+                    remote().stats.report(out, true);
+                }
+                cons.out.println("Wrote resource load statistics to " + args[2]);
+            } else {
+                cons.out.printf("queued: %d, loaded: %d\n", remote().qdepth(), remote().numloaded());
+                cons.out.println("local:");
+                local().stats.report(cons.out, false);
+                cons.out.println("remote:");
+                remote().stats.report(cons.out, false);
+            }
+        });
+    }
+
     public static class Pool {
         public int nloaders = 2;
+        public final LoadStats stats = new LoadStats();
         private final Collection<Loader> loaders = new LinkedList<Loader>();
-        private final List<ResSource> sources = new LinkedList<ResSource>();
-        private final Map<String, Resource> cache = new CacheMap<String, Resource>();
-        private final PrioQueue<Queued> queue = new PrioQueue<Queued>();
-        private final Map<String, Queued> queued = new HashMap<String, Queued>();
+        private volatile int nlive = 0;
+        private final List<ResSource> sources = new CopyOnWriteArrayList<ResSource>();
+        /* The cache and the queued set are concurrent maps, and the
+         * queue is one lock-free queue per priority lane, so that
+         * loaders and the threads of several sessions don't serialize
+         * on pool-wide monitors. Lookups and insertions of a single
+         * name are made atomic by locking one of a set of stripes
+         * chosen by the name's hash. */
+        private final Map<String, Resource> cache = new CacheMap<String, Resource>(CacheMap.RefType.SOFT, true);
+        private final Map<String, Queued> queued = new ConcurrentHashMap<String, Queued>();
+        private static final int NLANES = 3;
+        @SuppressWarnings("unchecked")
+        private final Queue<Queued>[] lanes = new Queue[NLANES];
+        private final Semaphore avail = new Semaphore(0);
+        private final AtomicInteger qsize = new AtomicInteger(0);
+        private final Object[] stripes = new Object[16];
         private final Pool parent;
 
+        {
+            for (int i = 0; i < NLANES; i++)
+                lanes[i] = new ConcurrentLinkedQueue<Queued>();
+            for (int i = 0; i < stripes.length; i++)
+                stripes[i] = new Object();
+        }
+
+        private Object stripe(String name) {
+            return (stripes[(name.hashCode() & 0x7fffffff) % stripes.length]);
+        }
+
+        /* Loads waited for synchronously run at 10, loads somebody
+         * has tried to get() at 1 and background loads below 0. */
+        private static int lane(int prio) {
+            if (prio >= 10)
+                return (0);
+            if (prio > 0)
+                return (1);
+            return (2);
+        }
+
         public Pool(Pool parent, ResSource... sources) {
             this.parent = parent;
             for (ResSource source : sources)
@@ -427,6 +581,10 @@ public class Resource implements Serializable {
             volatile boolean done = false;
             Resource res;
             LoadException error;
+            transient long qtime = System.nanoTime();
+            /* Lane this is queued in, or -1. Lane entries not
+             * matching it are stale and skipped by the loaders. */
+            transient int qlane = -1;
 
             Queued(String name, int ver, int prio) {
                 super(name, ver);
@@ -438,8 +596,13 @@ public class Resource implements Serializable {
             }
 
             public void boostprio(int prio) {
-                if (this.prio < prio)
+                if (this.prio < prio) {
                     this.prio = prio;
+                    synchronized (this) {
+                        if ((qlane >= 0) && (lane(prio) < qlane))
+                            enqueue(this, lane(prio));
+                    }
+                }
                 Queued p = awaiting;
                 if (p != null)
                     p.boostprio(prio);
@@ -467,11 +630,11 @@ public class Resource implements Serializable {
                     this.notifyAll();
                 }
                 if (res != null) {
-                    synchronized (cache) {
+                    /* load() looks in cache and then in queued under
+                     * this lock, and must find the resource in one. */
+                    synchronized (stripe(name)) {
                         cache.put(name, res);
-                    }
-                    synchronized (queue) {
-                        queued.remove(name);
+                        queued.remove(name, this);
                     }
                 }
             }
@@ -479,9 +642,9 @@ public class Resource implements Serializable {
             private void prior(Queued prior) {
                 if ((res = prior.res) == null) {
                     error = prior.error;
-                    synchronized (queue) {
-                        queue.add(this);
-                        queue.notify();
+                    qtime = System.nanoTime();
+                    synchronized (this) {
+                        enqueue(this, lane(prio));
                     }
                     ckld();
                 } else {
@@ -494,21 +657,68 @@ public class Resource implements Serializable {
             }
         }
 
+        /* Must be called with q locked. */
+        private void enqueue(Queued q, int lane) {
+            if (q.qlane < 0)
+                qsize.incrementAndGet();
+            q.qlane = lane;
+            lanes[lane].add(q);
+            avail.release();
+        }
+
+        private boolean dequeue(Queued q, int lane) {
+            synchronized (q) {
+                if ((q.qlane < 0) || ((lane >= 0) && (q.qlane != lane)))
+                    return (false);
+                q.qlane = -1;
+            }
+            qsize.decrementAndGet();
+            return (true);
+        }
+
+        private Queued next(long timeout) throws InterruptedException {
+            if (!avail.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                return (null);
+            /* Every lane entry has a permit, so having acquired
+             * one there is an entry to take, even if it turns out to
+             * be stale. */
+            while (true) {
+                for (int i = 0; i < NLANES; i++) {
+                    Queued q = lanes[i].poll();
+                    if (q != null)
+                        return (dequeue(q, i) ? q : null);
+                }
+                Thread.yield();
+            }
+        }
+
         private void handle(Queued res) {
+            long start = System.nanoTime(), fetch = 0, parse = 0;
+            ResSource from = null;
+            int tries = 0;
+            stats.qwait.add(start - res.qtime);
             for (ResSource src : sources) {
+                tries++;
                 try {
+                    long t0 = System.nanoTime();
                     InputStream in = src.get(res.name);
+                    long t1 = System.nanoTime();
+                    fetch += t1 - t0;
                     try {
                         Resource ret = new Resource(this, res.name, res.ver);
                         ret.source = src;
                         ret.load(in);
                         res.res = ret;
                         res.error = null;
+                        parse = System.nanoTime() - t1;
+                        from = src;
+                        stats.hit(src, true);
                         break;
                     } finally {
                         in.close();
                     }
                 } catch (Throwable t) {
+                    stats.hit(src, false);
                     LoadException error;
                     if (t instanceof LoadException)
                         error = (LoadException) t;
@@ -522,12 +732,19 @@ public class Resource implements Serializable {
                     res.error = error;
                 }
             }
+            /* Fetch time covers opening the source stream, including
+             * the misses of earlier sources; for streaming sources
+             * the actual transfer is accounted as parse time. */
+            stats.fetch.add(fetch);
+            if (from != null)
+                stats.parse.add(parse);
+            stats.loaded(new LoadStats.Sample(res.name, from, start - res.qtime, fetch, parse), tries);
             res.done();
         }
 
         public Named load(String name, int ver, int prio) {
             Queued ret;
-            synchronized (cache) {
+            synchronized (stripe(name)) {
                 Resource cur = cache.get(name);
                 if (cur != null) {
                     if ((ver == -1) || (cur.ver == ver)) {
@@ -542,7 +759,7 @@ public class Resource implements Serializable {
                         throw (new LoadException(String.format("Weird version number on %s (%d > %d), loaded from %s", cur.name, cur.ver, ver, cur.source), cur));
                     }
                 }
-                synchronized (queue) {
+                {
                     Queued cq = queued.get(name);
                     if (cq != null) {
                         if (ver != -1) {
@@ -563,13 +780,14 @@ public class Resource implements Serializable {
                             }
                         }
                         queued.remove(name);
-                        queue.removeid(cq);
+                        dequeue(cq, -1);
                     }
                     Queued nq = new Queued(name, ver, prio);
                     queued.put(name, nq);
                     if (parent == null) {
-                        queue.add(nq);
-                        queue.notify();
+                        synchronized (nq) {
+                            enqueue(nq, lane(prio));
+                        }
                     } else {
                         Indir<Resource> pr = parent.load(name, ver, prio);
                         if (pr instanceof Queued) {
@@ -608,10 +826,9 @@ public class Resource implements Serializable {
         }
 
         private void ckld() {
-            int qsz;
-            synchronized (queue) {
-                qsz = queue.size();
-            }
+            int qsz = qsize.get();
+            if (nlive >= Math.min(nloaders, qsz))
+                return;
             synchronized (loaders) {
                 while (loaders.size() < Math.min(nloaders, qsz)) {
                     final Loader n = new Loader();
@@ -640,6 +857,7 @@ public class Resource implements Serializable {
             public void run() {
                 synchronized (loaders) {
                     loaders.add(this);
+                    nlive = loaders.size();
                     added = true;
                     loaders.notifyAll();
                 }
@@ -647,14 +865,11 @@ public class Resource implements Serializable {
                 try {
                     while (true) {
                         Queued cur;
-                        synchronized (queue) {
-                            long start = System.currentTimeMillis(), now = start;
-                            while ((cur = queue.poll()) == null) {
-                                queue.wait(10000 - (now - start));
-                                now = System.currentTimeMillis();
-                                if (now - start >= 10000)
-                                    return;
-                            }
+                        long start = System.currentTimeMillis(), now = start;
+                        while ((cur = next(10000 - (now - start))) == null) {
+                            now = System.currentTimeMillis();
+                            if (now - start >= 10000)
+                                return;
                         }
                         handle(cur);
                         cur = null;
@@ -664,6 +879,7 @@ public class Resource implements Serializable {
                 } finally {
                     synchronized (loaders) {
                         loaders.remove(this);
+                        nlive = loaders.size();
                     }
                     if (!intd)
                         ckld();
@@ -673,17 +889,13 @@ public class Resource implements Serializable {
 
         public int qdepth() {
             int ret = (parent == null) ? 0 : parent.qdepth();
-            synchronized (queue) {
-                ret += queue.size();
-            }
+            ret += qsize.get();
             return (ret);
         }
 
         public int numloaded() {
             int ret = (parent == null) ? 0 : parent.numloaded();
-            synchronized (cache) {
-                ret += cache.size();
-            }
+            ret += cache.size();
             return (ret);
         }
 
@@ -691,9 +903,7 @@ public class Resource implements Serializable {
             Set<Resource> ret = new HashSet<Resource>();
             if (parent != null)
                 ret.addAll(parent.cached());
-            synchronized (cache) {
-                ret.addAll(cache.values());
-            }
+            ret.addAll(cache.values());
             return (ret);
         }
 
@@ -43,7 +43,9 @@ import java.text.AttributedCharacterIterator;
 import java.text.AttributedCharacterIterator.Attribute;
 import java.text.AttributedString;
 import java.text.CharacterIterator;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -588,6 +590,96 @@ public class RichText extends Text {
         }
     }
 
+    /* Parsed and laid-out part trees, shared between all foundries and
+     * keyed by (foundry, text, width, extra attributes), so that texts
+     * rendered over and over (chat lines, item and menu tooltips) are
+     * only parsed and broken into lines once. The parts of a cached
+     * layout are shared by every RichText rendered from it, and must
+     * not be modified. */
+    public static boolean cacheenabled = Utils.getprefb("rtcache", true);
+    private static final int MAXLAYOUTS = 512;
+    private static long hits, misses;
+    private static final Map<LayoutKey, Layout> layouts = new LinkedHashMap<LayoutKey, Layout>(MAXLAYOUTS, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<LayoutKey, Layout> eldest) {
+            return (size() > MAXLAYOUTS);
+        }
+    };
+
+    private static class Layout {
+        final Part parts;
+        final Coord sz;
+
+        Layout(Part parts, Coord sz) {
+            this.parts = parts;
+            this.sz = sz;
+        }
+    }
+
+    private static class LayoutKey {
+        final Foundry fnd;
+        final String text;
+        final int width;
+        final Object[] extra;
+        final int hash;
+
+        private LayoutKey(Foundry fnd, String text, int width, Object[] extra) {
+            this.fnd = fnd;
+            this.text = text;
+            this.width = width;
+            this.extra = extra;
+            this.hash = (((System.identityHashCode(fnd) * 31) + text.hashCode()) * 31 + width) * 31 + Arrays.hashCode(extra);
+        }
+
+        /* Only attribute values with value semantics make for a
+         * usable key; anything else is not cached. */
+        static LayoutKey mk(Foundry fnd, String text, int width, Object[] extra) {
+            for (int i = 1; i < extra.length; i += 2) {
+                Object v = extra[i];
+                if (!((v instanceof Color) || (v instanceof Number) || (v instanceof String) ||
+                        (v instanceof Font) || (v instanceof Boolean) || (v instanceof TextAttribute)))
+                    return (null);
+            }
+            return (new LayoutKey(fnd, text, width, extra.clone()));
+        }
+
+        public int hashCode() {
+            return (hash);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof LayoutKey))
+                return (false);
+            LayoutKey k = (LayoutKey) o;
+            return ((k.fnd == fnd) && (k.width == width) && k.text.equals(text) && Arrays.equals(k.extra, extra));
+        }
+    }
+
+    public static void clearcache() {
+        synchronized (layouts) {
+            layouts.clear();
+        }
+    }
+
+    static {
+        Console.setscmd("rtcache", (cons, args) -> {
+            if (args.length >= 2) {
+                if (args[1].equals("reset")) {
+                    synchronized (layouts) {
+                        layouts.clear();
+                        hits = misses = 0;
+                    }
+                } else {
+                    Utils.setprefb("rtcache", cacheenabled = Utils.parsebool(args[1]));
+                    clearcache();
+                }
+            } else {
+                synchronized (layouts) {
+                    cons.out.printf("rich text layouts %s, %d entries, %d hits, %d misses\n", cacheenabled ? "on" : "off", layouts.size(), hits, misses);
+                }
+            }
+        });
+    }
+
     public static class Foundry {
         private Parser parser;
         private RState rs;
@@ -696,7 +788,7 @@ public class RichText extends Text {
             return (sz);
         }
 
-        public RichText render(String text, int width, Object... extra) {
+        private Layout layout(String text, int width, Object... extra) {
             Map<? extends Attribute, ?> extram = null;
             if (extra.length > 0) {
                 extram = fillattrs(extra);
@@ -704,16 +796,44 @@ public class RichText extends Text {
             Part fp = parser.parse(text, extram);
             fp.prepare(rs);
             fp = layout(fp, width);
+            /* Bounds fetches every part's layout, so that rendering
+             * a shared tree later never has to measure anything. */
             Coord sz = bounds(fp);
             if (sz.x < 1) sz = sz.add(1, 0);
             if (sz.y < 1) sz = sz.add(0, 1);
-            BufferedImage img = TexI.mkbuf(sz);
+            return (new Layout(fp, sz));
+        }
+
+        public RichText render(String text, int width, Object... extra) {
+            Layout l = null;
+            LayoutKey key = cacheenabled ? LayoutKey.mk(this, text, width, extra) : null;
+            if (key != null) {
+                synchronized (layouts) {
+                    l = layouts.get(key);
+                    if (l != null)
+                        hits++;
+                    else
+                        misses++;
+                }
+            }
+            if (l == null) {
+                l = layout(text, width, extra);
+                if (key != null) {
+                    synchronized (layouts) {
+                        layouts.put(key, l);
+                    }
+                }
+            }
+            BufferedImage img = TexI.mkbuf(l.sz);
             Graphics2D g = img.createGraphics();
             if (aa)
                 Utils.AA(g);
-            for (Part p = fp; p != null; p = p.next)
-                p.render(g);
-            return (new RichText(text, img, fp));
+            synchronized (l) {
+                for (Part p = l.parts; p != null; p = p.next)
+                    p.render(g);
+            }
+            g.dispose();
+            return (new RichText(text, img, l.parts));
         }
 
         public RichText render(String text) {
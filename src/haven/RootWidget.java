@@ -51,7 +51,7 @@ public class RootWidget extends ConsoleHost {
     public boolean globtype(char key, KeyEvent ev) {
         if (!super.globtype(key, ev)) {
             if (key == '`') {
-                GameUI gi = findchild(GameUI.class);
+                GameUI gi = ui.first(GameUI.class);
                 if (Config.profile) {
                     add(new Profwnd(guprof, "UI profile"), new Coord(100, 100));
                     add(new Profwnd(grprof, "GL profile"), new Coord(450, 100));
@@ -214,6 +214,8 @@ public class Skeleton {
         public float[][] lrot, grot;
         private Pose from = null;
         public int seq = 0;
+        /* The shared PoseCache entry this pose currently matches, if any. */
+        public PoseCache.Entry shared = null;
 
         private Pose() {
             int nb = blist.length;
@@ -243,6 +245,7 @@ public class Skeleton {
 
         public void gbuild() {
             int nb = blist.length;
+            shared = null;
             for (int i = 0; i < nb; i++) {
                 Bone b = blist[i];
                 if (b.parent == null) {
@@ -642,6 +645,7 @@ public class Skeleton {
         protected boolean speedmod = false;
         protected double nspeed = 0.0;
         private boolean back = false;
+        private boolean dirty = false;
 
         public TrackMod(ModOwner owner, Track[] tracks, FxTrack[] effects, float len, WrapMode mode) {
             super(owner);
@@ -771,7 +775,9 @@ public class Skeleton {
             float ot = this.time;
             this.time = nt;
             if (!stat) {
-                aupdate(this.time);
+                /* Interpolation is deferred to apply(), which is skipped
+                 * entirely when the pose is found in the PoseCache. */
+                dirty = true;
                 if (!back)
                     playfx(ot, nt);
                 else
@@ -798,6 +804,22 @@ public class Skeleton {
                     break;
             }
             aupdate(time);
+            dirty = false;
+        }
+
+        public void apply(Pose p) {
+            if (dirty) {
+                aupdate(time);
+                dirty = false;
+            }
+            super.apply(p);
+        }
+
+        /* The current animation time quantized to q, distinguishing
+         * the return leg of ponging animations. */
+        public long phase(float q) {
+            long ph = (long) Math.floor(time / q);
+            return (back ? ~ph : ph);
         }
 
         public boolean stat() {
@@ -1026,6 +1048,10 @@ public class Skeleton {
                 this(owner, skel, defmode);
             }
 
+            public ResPose respose() {
+                return (ResPose.this);
+            }
+
             public String toString() {
                 return (String.format("#<pose %d in %s>", id, getres().name));
             }
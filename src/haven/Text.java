@@ -258,6 +258,10 @@ public class Text {
             return (this);
         }
 
+        public FontMetrics metrics() {
+            return (m);
+        }
+
         public int height() {
             /* XXX: Should leading go into this, when it's mostly
              * supposed to be used for one-liners? */
@@ -440,6 +444,13 @@ public class Text {
         return (tex);
     }
 
+    public void dispose() {
+        if (tex != null) {
+            tex.dispose();
+            tex = null;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         String cmd = args[0].intern();
         if (cmd == "render") {
@@ -34,12 +34,18 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class UI {
@@ -48,6 +54,10 @@ public class UI {
     final private LinkedList<Grab> keygrab = new LinkedList<Grab>(), mousegrab = new LinkedList<Grab>();
     public Map<Integer, Widget> widgets = new TreeMap<Integer, Widget>();
     public Map<Widget, Integer> rwidgets = new HashMap<Widget, Integer>();
+    /* Every widget linked below the root, by each of its classes and
+     * interfaces, maintained by Widget.link and unlink. */
+    private final Map<Class<?>, Set<Widget>> typeidx = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Class<?>[]> types = new ConcurrentHashMap<>();
     Receiver rcvr;
     public Coord mc = Coord.z, lcc = Coord.z;
     public Session sess;
@@ -56,6 +66,8 @@ public class UI {
     public boolean readytodrop = false;
     public Object lasttip;
     double lastevent, lasttick;
+    /* Bumped on every mouse and keyboard event, for WidgetCache. */
+    public int mouseseq, keyseq;
     public Widget mouseon;
     public Console cons = new WidgetConsole();
     private Collection<AfterDraw> afterdraws = new LinkedList<AfterDraw>();
@@ -183,6 +195,8 @@ public class UI {
     }
 
     public void draw(GOut g) {
+        WidgetCache.frame();
+        IconAtlas.frame(g);
         root.draw(g);
         synchronized (afterdraws) {
             for (AfterDraw ad : afterdraws)
@@ -376,6 +390,75 @@ public class UI {
         return (g);
     }
 
+    private static Class<?>[] types(Class<?> cl) {
+        Class<?>[] ret = types.get(cl);
+        if (ret == null) {
+            Set<Class<?>> buf = new LinkedHashSet<>();
+            for (Class<?> c = cl; (c != null) && (c != Widget.class); c = c.getSuperclass()) {
+                buf.add(c);
+                addifaces(buf, c);
+            }
+            types.put(cl, ret = buf.toArray(new Class<?>[0]));
+        }
+        return (ret);
+    }
+
+    private static void addifaces(Set<Class<?>> buf, Class<?> cl) {
+        for (Class<?> i : cl.getInterfaces()) {
+            if (buf.add(i))
+                addifaces(buf, i);
+        }
+    }
+
+    void index(Widget wdg) {
+        if (wdg.indexed)
+            return;
+        wdg.indexed = true;
+        for (Class<?> c : types(wdg.getClass()))
+            typeidx.computeIfAbsent(c, k -> Collections.synchronizedSet(new LinkedHashSet<>())).add(wdg);
+        for (Widget ch = wdg.child; ch != null; ch = ch.next)
+            index(ch);
+    }
+
+    void unindex(Widget wdg) {
+        if (!wdg.indexed)
+            return;
+        wdg.indexed = false;
+        for (Class<?> c : types(wdg.getClass())) {
+            Set<Widget> set = typeidx.get(c);
+            if (set != null)
+                set.remove(wdg);
+        }
+        for (Widget ch = wdg.child; ch != null; ch = ch.next)
+            unindex(ch);
+    }
+
+    /* Returns the longest-lived widget of type cl in the UI, or null
+     * if there is none. This replaces root.findchild(cl), without its
+     * walk over the entire widget tree. */
+    public <T extends Widget> T first(Class<T> cl) {
+        Set<Widget> set = typeidx.get(cl);
+        if (set == null)
+            return (null);
+        synchronized (set) {
+            Iterator<Widget> i = set.iterator();
+            return (i.hasNext() ? cl.cast(i.next()) : null);
+        }
+    }
+
+    /* Returns a snapshot of all widgets of type cl in the UI. */
+    public <T extends Widget> List<T> all(Class<T> cl) {
+        Set<Widget> set = typeidx.get(cl);
+        List<T> ret = new ArrayList<>();
+        if (set != null) {
+            synchronized (set) {
+                for (Widget w : set)
+                    ret.add(cl.cast(w));
+            }
+        }
+        return (ret);
+    }
+
     private void removeid(Widget wdg) {
         //System.out.println("Removing widget "+wdg.toString());
         wdg.removed();
@@ -473,6 +556,7 @@ public class UI {
             if (wdg != null) {
                 // try { for(Object obj:args) if(!wdg.toString().contains("CharWnd")) System.out.println("UI Wdg : " + wdg + " msg : "+msg+" id = " + id + " arg 1 : " + obj); }catch(ArrayIndexOutOfBoundsException qq){}
                 wdg.uimsg(msg.intern(), args);
+                wdg.redraw();
             } else {
                 if (configuration.skipexceptions) {
                     System.out.println("Uimsg to non-existent widget " + id);
@@ -500,6 +584,7 @@ public class UI {
 
     public void type(KeyEvent ev) {
         setmods(ev);
+        keyseq++;
         for (Grab g : c(keygrab)) {
             //Make sure this wdg is visible the entire way up
             if (g.wdg.tvisible()) {
@@ -513,6 +598,7 @@ public class UI {
 
     public void keydown(KeyEvent ev) {
         setmods(ev);
+        keyseq++;
         keycode = ev.getKeyCode();
         for (Grab g : c(keygrab)) {
             //Make sure this wdg is visible the entire way up
@@ -527,6 +613,7 @@ public class UI {
 
     public void keyup(KeyEvent ev) {
         setmods(ev);
+        keyseq++;
         keycode = -1;
         for (Grab g : c(keygrab)) {
             //Make sure this wdg is visible the entire way up
@@ -538,6 +625,20 @@ public class UI {
         root.keyup(ev);
     }
 
+    /* Whether w or one of its descendants holds a mouse or keyboard
+     * grab. */
+    public boolean grabbed(Widget w) {
+        for (Grab g : c(mousegrab)) {
+            if (g.wdg.hasparent(w))
+                return (true);
+        }
+        for (Grab g : c(keygrab)) {
+            if (g.wdg.hasparent(w))
+                return (true);
+        }
+        return (false);
+    }
+
     private Coord wdgxlate(Coord c, Widget wdg) {
         return (c.sub(wdg.rootpos()));
     }
@@ -562,6 +663,7 @@ public class UI {
 
     public void mousedown(MouseEvent ev, Coord c, int button) {
         setmods(ev);
+        mouseseq++;
         lcc = mc = c;
         for (Grab g : c(mousegrab)) {
             //Make sure this wdg is visible the entire way up
@@ -575,6 +677,7 @@ public class UI {
 
     public void mouseup(MouseEvent ev, Coord c, int button) {
         setmods(ev);
+        mouseseq++;
         mc = c;
         for (Grab g : c(mousegrab)) {
             //Make sure this wdg is visible the entire way up
@@ -588,6 +691,7 @@ public class UI {
 
     public void mousemove(MouseEvent ev, Coord c) {
         setmods(ev);
+        mouseseq++;
         mc = c;
         root.mousemove(c);
     }
@@ -599,6 +703,7 @@ public class UI {
 
     public void mousewheel(MouseEvent ev, Coord c, int amount) {
         setmods(ev);
+        mouseseq++;
         lcc = mc = c;
         for (Grab g : c(mousegrab)) {
             if (g.wdg.tvisible()) {
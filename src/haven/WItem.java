@@ -96,13 +96,32 @@ public class WItem extends Widget implements DTarget {
         return (longtip(item, info));
     }
 
-    public class ItemTip implements Indir<Tex> {
-        private final TexI tex;
+    /* Tooltip images are rendered on the defer threads, since long
+     * tips for items with many infos can take a good while; until one
+     * is done, its tip shows the tip it replaces, if any, or a
+     * placeholder. */
+    private static Tex ttpending = null;
+    private static WItem ttowner = null;
+
+    private static Tex ttpending() {
+        if (ttpending == null)
+            ttpending = Text.render("...").tex();
+        return (ttpending);
+    }
 
-        public ItemTip(BufferedImage img) {
-            if (img == null)
-                throw (new Loading());
-            tex = new TexI(img);
+    public class ItemTip implements Indir<Tex> {
+        private final Defer.Future<BufferedImage> img;
+        private final ItemTip prev;
+        private TexI tex = null;
+
+        public ItemTip(Defer.Callable<BufferedImage> render, ItemTip prev) {
+            this.img = Defer.later(() -> {
+                BufferedImage ret = render.call();
+                if (ret == null)
+                    throw (new Loading());
+                return (ret);
+            });
+            this.prev = prev;
         }
 
         public GItem item() {
@@ -110,19 +129,37 @@ public class WItem extends Widget implements DTarget {
         }
 
         public Tex get() {
+            if (tex == null) {
+                if (!img.done())
+                    return ((prev != null) ? prev.get() : ttpending());
+                try {
+                    tex = new TexI(img.get());
+                } catch (Defer.DeferredException e) {
+                    return (ttpending());
+                }
+            }
             return (tex);
         }
+
+        /* Cancels the tip if it is still being rendered, and returns
+         * whether it was. */
+        boolean cancel() {
+            if (img.done())
+                return (false);
+            img.cancel();
+            return (true);
+        }
     }
 
     public class ShortTip extends ItemTip {
         public ShortTip(List<ItemInfo> info) {
-            super(shorttip(info));
+            super(() -> shorttip(info), null);
         }
     }
 
     public class LongTip extends ItemTip {
-        public LongTip(List<ItemInfo> info) {
-            super(longtip(info));
+        public LongTip(List<ItemInfo> info, ItemTip prev) {
+            super(() -> longtip(info), prev);
         }
     }
 
@@ -130,6 +167,21 @@ public class WItem extends Widget implements DTarget {
     private ItemTip shorttip = null, longtip = null;
     private List<ItemInfo> ttinfo = null;
 
+    /* Stops rendering tips that are not yet done. Finished tips are
+     * kept until the item's info changes, so that hovering the item
+     * again shows them at once. */
+    private void canceltips() {
+        if ((shorttip != null) && shorttip.cancel())
+            shorttip = null;
+        if ((longtip != null) && longtip.cancel())
+            longtip = null;
+    }
+
+    private void droptips() {
+        canceltips();
+        shorttip = longtip = null;
+    }
+
     public Object tooltip(Coord c, Widget prev) {
         double now = Utils.rtime();
         if (prev == this) {
@@ -142,12 +194,19 @@ public class WItem extends Widget implements DTarget {
         } else {
             hoverstart = now;
         }
+        synchronized (WItem.class) {
+            if (ttowner != this) {
+                if (ttowner != null)
+                    ttowner.canceltips();
+                ttowner = this;
+            }
+        }
         try {
             List<ItemInfo> info = item.info();
             if (info.size() < 1)
                 return (null);
             if (info != ttinfo) {
-                shorttip = longtip = null;
+                droptips();
                 ttinfo = info;
             }
             if (now - hoverstart < 1.0 && !Config.longtooltips) {
@@ -156,7 +215,7 @@ public class WItem extends Widget implements DTarget {
                 return (shorttip);
             } else {
                 if (longtip == null)
-                    longtip = new LongTip(info);
+                    longtip = new LongTip(info, shorttip);
                 return (longtip);
             }
         } catch (Loading e) {
@@ -462,6 +521,11 @@ public class WItem extends Widget implements DTarget {
     @Override
     public void reqdestroy() {
         super.reqdestroy();
+        synchronized (WItem.class) {
+            if (ttowner == this)
+                ttowner = null;
+        }
+        canceltips();
         if (destroycb != null)
             destroycb.notifyDestroy();
     }
@@ -55,6 +55,12 @@ public class Widget {
     public Widget next, prev, child, lchild, parent;
     public boolean focustab = false, focusctl = false, hasfocus = false, visible = true;
     private boolean attached = false;
+    /* Whether this widget is in its UI's type index; see UI.first. */
+    boolean indexed = false;
+    private WidgetCache cache = null;
+    /* Set when this widget or a descendant has changed in a way that
+     * a cached ancestor needs to redraw for. */
+    boolean cdirty = true;
     private boolean canfocus = false, autofocus = false;
     public boolean canactivate = false, cancancel = false;
     public Widget focused;
@@ -494,7 +500,7 @@ public class Widget {
         }
     }
 
-    public void link() {
+    private void link0() {
         if (parent.lchild != null)
             parent.lchild.next = this;
         if (parent.child == null)
@@ -503,7 +509,7 @@ public class Widget {
         parent.lchild = this;
     }
 
-    public void linkfirst() {
+    private void linkfirst0() {
         if (parent.child != null)
             parent.child.prev = this;
         if (parent.lchild == null)
@@ -512,7 +518,7 @@ public class Widget {
         parent.child = this;
     }
 
-    public void unlink() {
+    private void unlink0() {
         if (next != null)
             next.prev = prev;
         if (prev != null)
@@ -525,6 +531,52 @@ public class Widget {
         prev = null;
     }
 
+    private void index() {
+        UI ui = parent.ui;
+        if ((ui != null) && (parent.indexed || (parent == ui.root)))
+            ui.index(this);
+    }
+
+    public void link() {
+        link0();
+        index();
+        parent.redraw();
+    }
+
+    public void linkfirst() {
+        linkfirst0();
+        index();
+        parent.redraw();
+    }
+
+    public void unlink() {
+        unlink0();
+        if (indexed && (parent.ui != null))
+            parent.ui.unindex(this);
+        parent.redraw();
+    }
+
+    /* Opts this widget in to being drawn from an offscreen copy of
+     * itself, which is only redrawn when it changes; see WidgetCache.
+     * Widgets that change without calling redraw (or getting input or
+     * messages) will appear stale for up to WidgetCache.MAXAGE. */
+    public void setcached(boolean cached) {
+        if (cached && (cache == null)) {
+            cache = new WidgetCache();
+            cdirty = true;
+        } else if (!cached && (cache != null)) {
+            cache.dispose();
+            cache = null;
+        }
+    }
+
+    /* Marks this widget as needing to be redrawn by any cached
+     * ancestor. */
+    public void redraw() {
+        for (Widget w = this; w != null; w = w.parent)
+            w.cdirty = true;
+    }
+
     public Coord xlate(Coord c, boolean in) {
         return (c);
     }
@@ -569,6 +621,7 @@ public class Widget {
     public void destroy() {
         if (canfocus)
             setcanfocus(false);
+        setcached(false);
         unlink();
         parent.cdestroy(this);
     }
@@ -786,7 +839,10 @@ public class Widget {
                 g2 = g.reclip(cc, wdg.sz);
             else
                 g2 = g.reclipl(cc, wdg.sz);
-            wdg.draw(g2);
+            if (wdg.cache != null)
+                wdg.cache.draw(wdg, g2);
+            else
+                wdg.draw(g2);
         }
     }
 
@@ -1042,18 +1098,22 @@ public class Widget {
 
     public void raise() {
         synchronized ((ui != null) ? ui : new Object()) {
-            unlink();
-            link();
+            unlink0();
+            link0();
+            parent.redraw();
         }
     }
 
     public void lower() {
         synchronized ((ui != null) ? ui : new Object()) {
-            unlink();
-            linkfirst();
+            unlink0();
+            linkfirst0();
+            parent.redraw();
         }
     }
 
+    /* Prefer UI.first and UI.all for searching the whole UI, which
+     * need not walk the widget tree. */
     @Deprecated
     public <T extends Widget> T findchild(Class<T> cl) {
         for (Widget wdg = child; wdg != null; wdg = wdg.next) {
@@ -1202,12 +1262,14 @@ public class Widget {
 
     public void hide() {
         visible = false;
+        redraw();
         if (canfocus && (parent != null))
             parent.delfocusable(this);
     }
 
     public void show() {
         visible = true;
+        redraw();
         if (canfocus && (parent != null))
             parent.newfocusable(this);
     }
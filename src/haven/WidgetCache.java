@@ -0,0 +1,123 @@
+package haven;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL2;
+import java.awt.Color;
+
+/* Offscreen copy of a widget subtree that is only redrawn when the
+ * widget has been marked dirty (see Widget.redraw), when mouse or
+ * keyboard input may have reached it, or after MAXAGE seconds as a
+ * safety net for state that changes without telling anyone; in every
+ * other frame the copy is simply blitted. Widgets opt in with
+ * Widget.setcached. Cached widgets nested inside another cached
+ * widget are drawn directly into their ancestor's buffer. */
+public class WidgetCache {
+    public static boolean enabled = Utils.getprefb("wdgcache", true);
+    public static boolean debug = false;
+    public static double MAXAGE = 0.5;
+    /* Counts for the last complete frame. */
+    public static int redrawn, blitted;
+    private static int nredrawn, nblitted;
+    private static boolean rendering = false;
+    /* Content is accumulated with premultiplied alpha, so that
+     * translucent parts come out the same once blitted. */
+    private static final GLState fbblend = new States.Blending(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA, GL.GL_FUNC_ADD,
+            GL.GL_ONE, GL.GL_ONE_MINUS_SRC_ALPHA, GL.GL_FUNC_ADD);
+    private static final GLState premul = new States.Blending(GL.GL_ONE, GL.GL_ONE_MINUS_SRC_ALPHA, GL.GL_FUNC_ADD,
+            GL.GL_ONE, GL.GL_ONE_MINUS_SRC_ALPHA, GL2.GL_MAX);
+    private static final Color transparent = new Color(0, 0, 0, 0);
+    private static final Color dbgredrawn = new Color(255, 0, 0, 64), dbgblitted = new Color(0, 255, 0, 128);
+    private GBuffer buf;
+    private double last;
+    private int mseq = -1, kseq = -1;
+    private boolean hover;
+
+    public static void frame() {
+        redrawn = nredrawn;
+        blitted = nblitted;
+        nredrawn = nblitted = 0;
+    }
+
+    /* Draws w through its cache, given the GOut its parent would
+     * otherwise have drawn it with. */
+    public void draw(Widget w, GOut g) {
+        if (!enabled || rendering || (w.sz.x <= 0) || (w.sz.y <= 0)) {
+            w.draw(g);
+            return;
+        }
+        UI ui = w.ui;
+        if (ui != null) {
+            boolean in = ui.mc.isect(g.tx, w.sz);
+            if (ui.mouseseq != mseq) {
+                if (in || hover || ui.grabbed(w))
+                    w.cdirty = true;
+                mseq = ui.mouseseq;
+            }
+            if (ui.keyseq != kseq) {
+                if (w.hasfocus || ui.grabbed(w))
+                    w.cdirty = true;
+                kseq = ui.keyseq;
+            }
+            hover = in;
+        }
+        if ((buf == null) || !buf.sz.equals(w.sz)) {
+            dispose();
+            buf = new GBuffer(w.sz);
+            w.cdirty = true;
+        }
+        double now = Utils.rtime();
+        boolean re = w.cdirty || ((now - last) > MAXAGE);
+        if (re) {
+            GOut bg = buf.graphics(g, fbblend);
+            buf.clear(bg, transparent);
+            w.cdirty = false;
+            rendering = true;
+            try {
+                w.draw(bg);
+            } catch (Loading l) {
+                w.cdirty = true;
+                throw (l);
+            } finally {
+                rendering = false;
+            }
+            last = now;
+            nredrawn++;
+        } else {
+            nblitted++;
+        }
+        g.usestate(premul);
+        GOut.Quads q = g.quads();
+        /* The buffer is upside down relative to the widget. */
+        q.add(buf.buf, Coord.z, w.sz, 0, 1, 1, 0);
+        q.flush();
+        g.defstate();
+        if (debug) {
+            g.chcolor(re ? dbgredrawn : dbgblitted);
+            if (re)
+                g.frect(Coord.z, w.sz);
+            else
+                g.rect(Coord.z, w.sz);
+            g.chcolor();
+        }
+    }
+
+    public void dispose() {
+        if (buf != null) {
+            buf.dispose();
+            buf = null;
+        }
+    }
+
+    static {
+        Console.setscmd("wdgcache", (cons, args) -> {
+            if (args.length >= 2) {
+                if (args[1].equals("debug"))
+                    debug = (args.length < 3) || Utils.parsebool(args[2]);
+                else
+                    Utils.setprefb("wdgcache", enabled = Utils.parsebool(args[1]));
+            } else {
+                cons.out.printf("widget cache %s, last frame: %d redrawn, %d blitted\n", enabled ? "on" : "off", redrawn, blitted);
+            }
+        });
+    }
+}
@@ -142,7 +142,7 @@ public class FlaxBot extends Window {
                     }
 
                     // Wait for harvest menu to appear and harvest the crop
-                    while (ui.root.findchild(FlowerMenu.class) == null) {
+                    while (ui.first(FlowerMenu.class) == null) {
                         lblProg2.settext("Waiting for Flowermenu");
                         if (stopThread || ui.gui.getwnd("Flax Farmer") == null)
                             return;
@@ -192,7 +192,7 @@ public class FlaxBot extends Window {
                     if (stopThread || ui.gui.getwnd("Flax Farmer") == null)
                         return;
 
-                    FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+                    FlowerMenu menu = ui.first(FlowerMenu.class);
                     if (menu != null) {
                         if (stopThread)
                             return;
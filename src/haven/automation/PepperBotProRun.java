@@ -180,7 +180,7 @@ public class PepperBotProRun extends Window implements Runnable {
                     int retryharvest = 0;
 
                     // Wait for harvest menu to appear
-                    while (ui.root.findchild(FlowerMenu.class) == null) {
+                    while (ui.first(FlowerMenu.class) == null) {
                         if (stopThread)
                             break;
                         retryharvest++;
@@ -196,7 +196,7 @@ public class PepperBotProRun extends Window implements Runnable {
                     }
 
                     // Select the harvest option
-                    FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+                    FlowerMenu menu = ui.first(FlowerMenu.class);
                     if (menu != null) {
                         for (FlowerMenu.Petal opt : menu.opts) {
                             if (opt.name.equals("Harvest")) {
@@ -143,7 +143,7 @@ public class PepperBotRun extends Window implements Runnable {
                 int retryharvest = 0;
 
                 // Wait for harvest menu to appear
-                while (ui.root.findchild(FlowerMenu.class) == null) {
+                while (ui.first(FlowerMenu.class) == null) {
                     if (stopThread)
                         break;
                     retryharvest++;
@@ -159,7 +159,7 @@ public class PepperBotRun extends Window implements Runnable {
                 }
 
                 // Select the harvest option
-                FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+                FlowerMenu menu = ui.first(FlowerMenu.class);
                 if (menu != null) {
                     for (FlowerMenu.Petal opt : menu.opts) {
                         if (opt.name.equals("Harvest")) {
@@ -12,6 +12,8 @@ import java.util.HashSet;
 
 public class OverlayData {
     private static ObservableCollection<OverlayGob> overlayed = new ObservableCollection<>(new HashSet<>()); //ObservableMap<boolean, OverlayGob>
+    /* Bumped on every change, so that gobs know to recheck their highlight. */
+    public static volatile int gen = 0;
 
     public static void init() {
         Storage.overlays.ensure(sql -> {
@@ -66,6 +68,7 @@ public class OverlayData {
     }
 
     public synchronized static void addText(String name, String text, Color textColor, Color strokeColor, int fontSize, String font, boolean withsql) {
+        gen++;
         boolean isExist = false;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
@@ -79,6 +82,7 @@ public class OverlayData {
     }
 
     public synchronized static void addHighlight(String name, Color highlightColor, boolean withsql) {
+        gen++;
         boolean isExist = false;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
@@ -92,6 +96,7 @@ public class OverlayData {
     }
 
     public static void add(String name, Color highlightColor) {
+        gen++;
         boolean isExist = false;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
@@ -112,6 +117,7 @@ public class OverlayData {
     }
 
     public static void add(String name, String text, Color textColor, Color strokeColor, int fontSize, String font) {
+        gen++;
         boolean isExist = false;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
@@ -145,6 +151,7 @@ public class OverlayData {
     }
 
     public synchronized static void remove(final String name) {
+        gen++;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
                 overlayed.remove(og);
@@ -164,6 +171,7 @@ public class OverlayData {
     }
 
     public synchronized static void removeText(final String name) {
+        gen++;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
                 og.add(null, null, null, 0, null);
@@ -178,6 +186,7 @@ public class OverlayData {
     }
 
     public synchronized static void removeHighlight(final String name) {
+        gen++;
         for (OverlayGob og : overlayed) {
             if (og.name.equals(name)) {
                 og.add(null);
@@ -45,7 +45,7 @@ public class FlowerPicker implements Runnable, ItemClickCallback, WItemDestroyCa
                 itm.item.wdgmsg("iact", itm.c, 3);
                 int timeout = 1000 / 5; // 1 second
                 int retries = 0;
-                while (gui.ui.root.findchild(FlowerMenu.class) == null) {
+                while (gui.ui.first(FlowerMenu.class) == null) {
                     if (retries == timeout) {
                         break;
                     }
@@ -55,7 +55,7 @@ public class FlowerPicker implements Runnable, ItemClickCallback, WItemDestroyCa
                 itm.registerDestroyCallback(this);
                 itemDestroyed = false;
                 synchronized (gui.ui) {
-                    FlowerMenu menu = gui.ui.root.findchild(FlowerMenu.class);
+                    FlowerMenu menu = gui.ui.first(FlowerMenu.class);
                     if (menu != null) {
                         menu.choose(menu.opts[0]);
                         menu.destroy();
@@ -87,14 +87,14 @@ public class SeedCropFarmer2 extends Window implements Runnable {
                 PBotUtils.pfGobClick(ui, g, 3, 0);
 
                 // Wait for harvest menu to appear and harvest the crop
-                while (ui.root.findchild(FlowerMenu.class) == null) {
+                while (ui.first(FlowerMenu.class) == null) {
                     PBotUtils.sleep(10);
                 }
 
                 if (stopThread)
                     return;
 
-                FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+                FlowerMenu menu = ui.first(FlowerMenu.class);
                 if (menu != null) {
                     for (FlowerMenu.Petal opt : menu.opts) {
                         if (opt.name.equals("Harvest")) {
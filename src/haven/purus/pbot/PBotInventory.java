@@ -98,14 +98,8 @@ public class PBotInventory {
      * @return Null if not found
      */
     public PBotItem getItemFromInventoryAtLocation(int xLoc, int yLoc) {
-        for (Widget w = inv.child; w != null; w = w.next) {
-            if (w instanceof WItem) {
-                WItem itm = (WItem) w;
-                if (itm.c.div(33).x == xLoc && itm.c.div(33).y == yLoc)
-                    return new PBotItem(itm);
-            }
-        }
-        return null;
+        WItem itm = inv.getItemAt(xLoc, yLoc);
+        return itm == null ? null : new PBotItem(itm);
     }
 
 
@@ -144,20 +138,7 @@ public class PBotInventory {
 
     // Returns a matrix representing the container and items inside, 1 = item in this grid, 0 = free grid
     public int[][] containerMatrix() {
-        int[][] ret = new int[inv.isz.x][inv.isz.y];
-        for (PBotItem item : getInventoryContents()) {
-            int xSize = item.gitem.size().x;
-            int ySize = item.gitem.size().y;
-            int xLoc = item.witem.c.div(33).x;
-            int yLoc = item.witem.c.div(33).y;
-
-            for (int i = 0; i < xSize; i++) {
-                for (int j = 0; j < ySize; j++) {
-                    ret[i + xLoc][j + yLoc] = 1;
-                }
-            }
-        }
-        return ret;
+        return inv.occupancy();
     }
 
     /**
@@ -115,7 +115,7 @@ public class PBotUtils {
      * @return False if petal or flower menu with name could not be found
      */
     public static boolean choosePetal(UI ui, String name) {
-        FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+        FlowerMenu menu = ui.first(FlowerMenu.class);
         if (menu != null) {
             for (FlowerMenu.Petal opt : menu.opts) {
                 if (opt.name.equals(name)) {
@@ -133,7 +133,7 @@ public class PBotUtils {
     }
 
     public static boolean petalExists(UI ui) {
-        FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+        FlowerMenu menu = ui.first(FlowerMenu.class);
         if (menu != null) {
             return true;
         }
@@ -148,7 +148,7 @@ public class PBotUtils {
      * Closes flowermenu, if it is open
      */
     public static void waitFlowermenuClose(UI ui) {
-        while (ui.root.findchild(FlowerMenu.class) != null)
+        while (ui.first(FlowerMenu.class) != null)
             sleep(25);
     }
 
@@ -282,7 +282,7 @@ public class PBotUtils {
      * Waits for flower menu to appear
      */
     public static void waitForFlowerMenu(UI ui) {
-        while (ui.root.findchild(FlowerMenu.class) == null) {
+        while (ui.first(FlowerMenu.class) == null) {
             sleep(15);
         }
     }
@@ -294,7 +294,7 @@ public class PBotUtils {
     public static boolean waitForFlowerMenu(UI ui, int limit) {
         int cycles = 0;
         int sleep = 10;
-        while (ui.root.findchild(FlowerMenu.class) == null) {
+        while (ui.first(FlowerMenu.class) == null) {
             if (cycles == limit) {
                 return false;
             } else {
@@ -314,12 +314,12 @@ public class PBotUtils {
      * Waits for the flower menu to disappear
      */
     public static void closeFlowermenu(UI ui) {
-        FlowerMenu menu = ui.root.findchild(FlowerMenu.class);
+        FlowerMenu menu = ui.first(FlowerMenu.class);
         if (menu != null) {
             menu.choose(null);
             menu.destroy();
         }
-        while (ui.root.findchild(FlowerMenu.class) != null) {
+        while (ui.first(FlowerMenu.class) != null) {
             sleep(15);
         }
     }